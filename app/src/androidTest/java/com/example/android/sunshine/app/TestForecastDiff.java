@@ -0,0 +1,165 @@
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks that the diff between two loads tells the list about exactly the days that came,
+    went or changed, and that a checked day stays checked wherever it moves.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    // Rows for the days firstDay up to but not including endDay, counted from today
+    private List<ForecastRow> createRows(int firstDay, int endDay, double[] highs) {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        for (int i = firstDay; i < endDay; i++) {
+            cursor.addRow(new Object[]{
+                    i + 1,
+                    WeatherContract.normalizeDate(mToday + i * DAY_IN_MILLIS),
+                    "Clear",
+                    highs == null ? 20.0 : highs[i - firstDay],
+                    5.0,
+                    "99705",
+                    800,
+                    64.7488,
+                    -147.353
+            });
+        }
+        List<ForecastRow> rows = ForecastRow.fromCursor(mContext, cursor);
+        cursor.close();
+        return rows;
+    }
+
+    public void testUnchangedRowsSendNothing() {
+        List<ForecastRow> rows = createRows(0, 14, null);
+        ForecastDiff diff = ForecastDiff.compute(rows, createRows(0, 14, null));
+        assertTrue("Error: identical loads produced updates: " + diff, diff.isEmpty());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(i, diff.getNewPosition(i));
+        }
+    }
+
+    public void testFirstLoadIsNotADiff() {
+        ForecastDiff diff = ForecastDiff.compute(null, createRows(0, 14, null));
+        assertFalse(diff.isEmpty());
+        assertNull(diff.mOldRows);
+    }
+
+    public void testDayRollover() {
+        // Yesterday falls off the front and a new day arrives at the end
+        List<ForecastRow> oldRows = createRows(-1, 13, null);
+        List<ForecastRow> newRows = createRows(0, 14, null);
+        ForecastDiff diff = ForecastDiff.compute(oldRows, newRows);
+
+        assertEquals(RecyclerView.NO_POSITION, diff.getNewPosition(0));
+        for (int i = 1; i < oldRows.size(); i++) {
+            assertEquals(i - 1, diff.getNewPosition(i));
+        }
+
+        // Only the two ends move, and the new first row is relaid in the "today" layout
+        RecordingObserver observer = dispatch(oldRows, diff);
+        assertEquals("[remove 0+1, insert 13+1, change 0+1]", observer.mEvents.toString());
+    }
+
+    public void testChangedTemperatureIsOneUpdate() {
+        double[] highs = new double[14];
+        for (int i = 0; i < highs.length; i++) {
+            highs[i] = 20.0;
+        }
+        List<ForecastRow> oldRows = createRows(0, 14, highs);
+        highs[6] = 25.0;
+        highs[7] = 26.0;
+        ForecastDiff diff = ForecastDiff.compute(oldRows, createRows(0, 14, highs));
+
+        RecordingObserver observer = dispatch(oldRows, diff);
+        assertEquals("[change 6+2]", observer.mEvents.toString());
+    }
+
+    public void testCheckedDayFollowsItsRow() {
+        List<ForecastRow> oldRows = createRows(-2, 12, null);
+        ForecastDiff diff = ForecastDiff.compute(oldRows, createRows(0, 14, null));
+
+        ForecastAdapter adapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_SINGLE);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        checkPosition(icm, oldRows, 5);
+        icm.remapCheckedPositions(diffMapper(diff));
+        assertEquals(3, icm.getSelectedItemPosition());
+        assertEquals(3, (int) icm.mCheckedIdStates.get(oldRows.get(5).mDate));
+
+        // A checked day that falls off the list is no longer checked
+        checkPosition(icm, oldRows, 1);
+        icm.remapCheckedPositions(diffMapper(diff));
+        assertEquals(RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+        assertEquals(0, icm.mCheckedIdStates.size());
+    }
+
+    private static void checkPosition(ItemChoiceManager icm, List<ForecastRow> rows, int position) {
+        icm.clearSelections();
+        icm.mCheckStates.put(position, true);
+        icm.mCheckedIdStates.put(rows.get(position).mDate, position);
+    }
+
+    private static ItemChoiceManager.PositionMapper diffMapper(final ForecastDiff diff) {
+        return new ItemChoiceManager.PositionMapper() {
+            @Override
+            public int getNewPosition(int oldPosition, long id) {
+                return diff.getNewPosition(oldPosition);
+            }
+        };
+    }
+
+    private RecordingObserver dispatch(List<ForecastRow> oldRows, ForecastDiff diff) {
+        ForecastAdapter adapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_NONE);
+        adapter.swapRows(oldRows);
+        RecordingObserver observer = new RecordingObserver();
+        adapter.registerAdapterDataObserver(observer);
+        assertTrue("Error: the diff wasn't applied in place", adapter.applyDiff(diff));
+        assertSame(diff.mNewRows, adapter.getRows());
+        return observer;
+    }
+
+    private static class RecordingObserver extends RecyclerView.AdapterDataObserver {
+        final List<String> mEvents = new ArrayList<String>();
+
+        @Override
+        public void onChanged() {
+            mEvents.add("all");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mEvents.add("change " + positionStart + "+" + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mEvents.add("insert " + positionStart + "+" + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mEvents.add("remove " + positionStart + "+" + itemCount);
+        }
+    }
+}
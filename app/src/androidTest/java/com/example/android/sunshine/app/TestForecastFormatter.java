@@ -0,0 +1,245 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Debug;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.text.SimpleDateFormat;
+
+/*
+    Checks that the formatter produces what the per-call formatting produced, that it follows
+    the units preference through the settings snapshot, and logs what a list bind allocates
+    with each.
+ */
+public class TestForecastFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastFormatter.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    private static final int FORECAST_DAYS = 14;
+    private static final int BENCHMARK_BINDS = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+    private ForecastFormatter mFormatter;
+    private long[] mDates;
+    private double[] mHighs;
+    private double[] mLows;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+        setUnits(R.string.pref_units_metric);
+        SettingsSnapshot.refresh(mContext);
+        mFormatter = new ForecastFormatter(mContext);
+
+        // A forecast like the list shows, starting yesterday to cover every kind of day
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mDates = new long[FORECAST_DAYS];
+        mHighs = new double[FORECAST_DAYS];
+        mLows = new double[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            mDates[i] = WeatherContract.normalizeDate(today + (i - 1) * DAY_IN_MILLIS);
+            mHighs[i] = 20.5 + i * 0.37;
+            mLows[i] = -3.25 + i * 0.81;
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mSavedUnits == null) {
+            mPrefs.edit().remove(mUnitsKey).commit();
+        } else {
+            mPrefs.edit().putString(mUnitsKey, mSavedUnits).commit();
+        }
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    private void setUnits(int unitsId) {
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(unitsId)).commit();
+    }
+
+    private boolean isMetric() {
+        return SettingsSnapshot.get(mContext).mIsMetric;
+    }
+
+    private void checkAgainstLegacy() {
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            long date = mDates[i];
+            assertEquals(legacyFormatTemperature(mContext, mHighs[i]),
+                    mFormatter.formatTemperature(mHighs[i]));
+            assertEquals(legacyFormatTemperature(mContext, mLows[i]),
+                    mFormatter.formatTemperature(mLows[i]));
+            assertEquals(legacyGetFriendlyDayString(mContext, date, true),
+                    mFormatter.getFriendlyDayString(date, true));
+            assertEquals(legacyGetFriendlyDayString(mContext, date, false),
+                    mFormatter.getFriendlyDayString(date, false));
+            assertEquals(legacyGetFullFriendlyDayString(mContext, date),
+                    mFormatter.getFullFriendlyDayString(date));
+        }
+    }
+
+    public void testMatchesPerCallFormatting() {
+        checkAgainstLegacy();
+        // Again, now that everything comes from the memos
+        checkAgainstLegacy();
+
+        setUnits(R.string.pref_units_imperial);
+        SettingsSnapshot.refresh(mContext);
+        checkAgainstLegacy();
+    }
+
+    public void testFollowsUnitsPreference() {
+        assertTrue(isMetric());
+        final String metric = mFormatter.formatTemperature(0);
+
+        // The listener is called on the main thread once the change is written
+        setUnits(R.string.pref_units_imperial);
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return !isMetric();
+            }
+        }.run();
+        assertFalse(metric.equals(mFormatter.formatTemperature(0)));
+        assertEquals(legacyFormatTemperature(mContext, 0), mFormatter.formatTemperature(0));
+    }
+
+    /**
+     * Each bind formats a day and two temperatures, as ForecastAdapter does.  Allocation
+     * counts are per thread and only meaningful relative to each other.
+     */
+    @SuppressWarnings("deprecation")
+    public void testBindAllocations() {
+        // Warm both paths up, which also fills the memos
+        for (int i = 0; i < FORECAST_DAYS * 10; i++) {
+            bindFormatter(i % FORECAST_DAYS);
+            bindLegacy(i % FORECAST_DAYS);
+        }
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_BINDS; i++) {
+                bindFormatter(i % FORECAST_DAYS);
+            }
+            long formatterNanos = System.nanoTime() - start;
+            int formatterCount = Debug.getThreadAllocCount();
+            int formatterBytes = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_BINDS; i++) {
+                bindLegacy(i % FORECAST_DAYS);
+            }
+            long legacyNanos = System.nanoTime() - start;
+            int legacyCount = Debug.getThreadAllocCount();
+            int legacyBytes = Debug.getThreadAllocSize();
+
+            Log.i(LOG_TAG, BENCHMARK_BINDS + " binds: formatter "
+                    + (formatterNanos / BENCHMARK_BINDS) + "ns, "
+                    + formatterCount + " objects, " + formatterBytes + " bytes; per call "
+                    + (legacyNanos / BENCHMARK_BINDS) + "ns, "
+                    + legacyCount + " objects, " + legacyBytes + " bytes");
+            assertTrue("Error: the formatter allocated as much as formatting per call",
+                    formatterBytes < legacyBytes);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private int bindFormatter(int day) {
+        return mFormatter.getFriendlyDayString(mDates[day], day == 1).length()
+                + mFormatter.formatTemperature(mHighs[day]).length()
+                + mFormatter.formatTemperature(mLows[day]).length();
+    }
+
+    private int bindLegacy(int day) {
+        return legacyGetFriendlyDayString(mContext, mDates[day], day == 1).length()
+                + legacyFormatTemperature(mContext, mHighs[day]).length()
+                + legacyFormatTemperature(mContext, mLows[day]).length();
+    }
+
+    // The per-call implementations the formatter replaced, kept as the reference.
+
+    private static boolean legacyIsMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    private static String legacyFormatTemperature(Context context, double temperature) {
+        if (!legacyIsMetric(context)) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+
+    private static String legacyGetFriendlyDayString(Context context, long dateInMillis,
+                                                     boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            String today = context.getString(R.string.today);
+            int formatId = R.string.format_full_friendly_date;
+            return String.format(context.getString(
+                    formatId,
+                    today,
+                    legacyGetFormattedMonthDay(dateInMillis)));
+        } else if ( julianDay < currentJulianDay + 7 ) {
+            return legacyGetDayName(context, dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyGetFullFriendlyDayString(Context context, long dateInMillis) {
+        String day = legacyGetDayName(context, dateInMillis);
+        int formatId = R.string.format_full_friendly_date;
+        return String.format(context.getString(
+                formatId,
+                day,
+                legacyGetFormattedMonthDay(dateInMillis)));
+    }
+
+    private static String legacyGetDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if ( julianDay == currentJulianDay +1 ) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyGetFormattedMonthDay(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that the precomputed rows hold what the list used to work out while binding, and
+    logs how long each frame of scrolling through 14 and 500 of them takes.
+ */
+public class TestForecastRows extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastRows.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    // Roughly what a fast fling moves the list by in one frame
+    private static final int SCROLL_PER_FRAME_PX = 120;
+    private static final int LIST_WIDTH_PX = 1080;
+    private static final int LIST_HEIGHT_PX = 1920;
+
+    private static MatrixCursor createForecastCursor(int numDays) {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS, numDays);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int[] weatherIds = {800, 801, 803, 500, 511, 601, 741, 211, 962};
+        for (int i = 0; i < numDays; i++) {
+            cursor.addRow(new Object[]{
+                    i + 1,
+                    WeatherContract.normalizeDate(today + i * DAY_IN_MILLIS),
+                    "Clear",
+                    20.5 + (i % 17),
+                    5.25 + (i % 11),
+                    "99705",
+                    weatherIds[i % weatherIds.length],
+                    64.7488,
+                    -147.353
+            });
+        }
+        return cursor;
+    }
+
+    public void testRowsHoldWhatBindingUsedToFormat() {
+        MatrixCursor cursor = createForecastCursor(14);
+        List<ForecastRow> rows = ForecastRow.fromCursor(mContext, cursor);
+        assertEquals(14, rows.size());
+
+        for (int i = 0; i < rows.size(); i++) {
+            ForecastRow row = rows.get(i);
+            cursor.moveToPosition(i);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+
+            assertEquals(date, row.mDate);
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId), row.mIconResource);
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId), row.mArtResource);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, false), row.mDay);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, true), row.mLongDay);
+            String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+            assertEquals(description, row.mDescription);
+            assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                    row.mDescriptionContentDescription);
+            String high = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            assertEquals(high, row.mHigh);
+            assertEquals(mContext.getString(R.string.a11y_high_temp, high),
+                    row.mHighContentDescription);
+            assertEquals(Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP)), row.mLow);
+            assertEquals("iconView" + date, row.mTransitionName);
+        }
+        cursor.close();
+    }
+
+    public void testScrollFrameTimes14() throws Throwable {
+        measureScrolling(14);
+    }
+
+    public void testScrollFrameTimes500() throws Throwable {
+        measureScrolling(500);
+    }
+
+    /**
+     * Lays a RecyclerView out at phone size and scrolls it to the end a frame's worth at a
+     * time, timing the layout, view creation and binding each scroll triggers.  The list isn't
+     * attached to a window, so drawing isn't included; that doesn't depend on the adapter.
+     */
+    private void measureScrolling(final int numDays) throws Throwable {
+        MatrixCursor cursor = createForecastCursor(numDays);
+        long start = System.nanoTime();
+        final List<ForecastRow> rows = ForecastRow.fromCursor(mContext, cursor);
+        final long loadNanos = System.nanoTime() - start;
+        cursor.close();
+
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                Context context = new ContextThemeWrapper(mContext, R.style.AppTheme_Main);
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                recyclerView.setHasFixedSize(true);
+                ForecastAdapter adapter = new ForecastAdapter(context, null, new View(context),
+                        AbsListView.CHOICE_MODE_NONE);
+                recyclerView.setAdapter(adapter);
+                adapter.swapRows(rows);
+
+                // The first frame creates and binds a screenful of rows
+                long frameStart = System.nanoTime();
+                layout(recyclerView);
+                long firstFrameNanos = System.nanoTime() - frameStart;
+
+                long[] frameNanos = new long[numDays * 4];
+                int frames = 0;
+                while (frames < frameNanos.length && recyclerView.canScrollVertically(1)) {
+                    frameStart = System.nanoTime();
+                    recyclerView.scrollBy(0, SCROLL_PER_FRAME_PX);
+                    frameNanos[frames++] = System.nanoTime() - frameStart;
+                }
+                assertFalse("Error: the list didn't reach its last row",
+                        recyclerView.canScrollVertically(1));
+
+                long[] sorted = Arrays.copyOf(frameNanos, frames);
+                Arrays.sort(sorted);
+                Log.i(LOG_TAG, numDays + " rows: built in " + (loadNanos / 1000)
+                        + "us off the list; first frame " + (firstFrameNanos / 1000) + "us; "
+                        + frames + " scroll frames, median "
+                        + (frames == 0 ? 0 : sorted[frames / 2] / 1000) + "us, 90th "
+                        + (frames == 0 ? 0 : sorted[frames * 9 / 10] / 1000) + "us, max "
+                        + (frames == 0 ? 0 : sorted[frames - 1] / 1000) + "us");
+            }
+        });
+    }
+
+    private static void layout(RecyclerView recyclerView) {
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(LIST_WIDTH_PX, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(LIST_HEIGHT_PX, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, LIST_WIDTH_PX, LIST_HEIGHT_PX);
+    }
+
+    private static void runOnMainThread(final Runnable runnable) throws Throwable {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Throwable[] failure = new Throwable[1];
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue("Error: timed out on the main thread", done.await(60, TimeUnit.SECONDS));
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import java.util.List;
+
+/*
+    Checks that switching the location keeps the one switched away from in the set the sync
+    adapter refreshes, going through the same calls the settings screen makes.
+ */
+public class TestSavedLocations extends AndroidTestCase {
+
+    private static final String LOCATION_A = "94043";
+    private static final String LOCATION_B = "London,uk";
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mSavedKey;
+    private String mCountKey;
+
+    // The user's own settings, put back afterwards
+    private String mLocation;
+    private String mSaved;
+    private String mCount;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        mSavedKey = mContext.getString(R.string.pref_saved_locations_key);
+        mCountKey = mContext.getString(R.string.pref_saved_locations_count_key);
+        mLocation = mPrefs.getString(mLocationKey, null);
+        mSaved = mPrefs.getString(mSavedKey, null);
+        mCount = mPrefs.getString(mCountKey, null);
+
+        // First use: the default location, never chosen, and nothing saved yet
+        mPrefs.edit()
+                .putString(mLocationKey, LOCATION_A)
+                .remove(mSavedKey)
+                .putString(mCountKey, "3")
+                .commit();
+        SettingsSnapshot.refresh(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit()
+                .putString(mLocationKey, mLocation)
+                .putString(mSavedKey, mSaved)
+                .putString(mCountKey, mCount)
+                .commit();
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    /**
+     * What SettingsActivity does: remembers the old location before the change, and the new
+     * one after it.
+     */
+    private void switchLocation(String location) {
+        Utility.rememberLocation(mContext, Utility.getPreferredLocation(mContext));
+        mPrefs.edit().putString(mLocationKey, location).commit();
+        SettingsSnapshot.refresh(mContext);
+        Utility.rememberLocation(mContext, Utility.getPreferredLocation(mContext));
+    }
+
+    private void checkSynced(String preferred, String other) {
+        List<String> locations = Utility.getSyncLocations(mContext);
+        assertEquals("Error: the preferred location isn't synced first",
+                preferred, locations.get(0));
+        assertTrue("Error: " + other + " stopped being synced after switching away from it",
+                locations.contains(other));
+        assertEquals(2, locations.size());
+    }
+
+    public void testSwitchingBackAndForthKeepsBoth() {
+        switchLocation(LOCATION_B);
+        checkSynced(LOCATION_B, LOCATION_A);
+
+        switchLocation(LOCATION_A);
+        checkSynced(LOCATION_A, LOCATION_B);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+    Runs forecast queries through the provider while another thread keeps rewriting the forecast
+    with bulkInsert, the way a sync does, and reports how long the queries took.
+ */
+public class TestDatabaseConcurrency extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDatabaseConcurrency.class.getSimpleName();
+
+    private static final int READER_THREADS = 2;
+    private static final long RUN_MILLIS = 3000;
+    private static final int FORECAST_DAYS = 14;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testWriteAheadLoggingEnabled() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("wal", cursor.getString(0).toLowerCase(Locale.US));
+        cursor.close();
+        db.close();
+    }
+
+    private static ContentValues[] createForecast(long locationRowId, int generation) {
+        ContentValues[] forecast = new ContentValues[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            forecast[i] = TestUtilities.createWeatherValues(locationRowId);
+            forecast[i].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * 1000L * 60 * 60 * 24);
+            forecast[i].put(WeatherEntry.COLUMN_MAX_TEMP, generation % 50);
+        }
+        return forecast;
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percent / 100));
+    }
+
+    public void testReadersDuringBulkInsert() throws Exception {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        final long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createForecast(locationRowId, 0));
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final int[] writes = new int[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int generation = 1; running.get(); generation++) {
+                    // The plain bulkInsert replaces every row, which is the heaviest write
+                    mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                            createForecast(locationRowId, generation));
+                    writes[0]++;
+                }
+            }
+        });
+
+        final Uri forecastUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        final Throwable[] readerError = new Throwable[1];
+        Thread[] readers = new Thread[READER_THREADS];
+        for (int i = 0; i < READER_THREADS; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (running.get()) {
+                            long start = System.nanoTime();
+                            Cursor cursor = mContext.getContentResolver().query(forecastUri,
+                                    null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+                            int count = cursor.getCount();
+                            cursor.close();
+                            latencies.add((System.nanoTime() - start) / 1000);
+                            // Readers only ever see a whole forecast, never a half-written one
+                            assertEquals(FORECAST_DAYS, count);
+                        }
+                    } catch (Throwable t) {
+                        readerError[0] = t;
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (readerError[0] != null) {
+            throw new AssertionError(readerError[0]);
+        }
+
+        List<Long> sorted = new ArrayList<Long>(latencies);
+        Collections.sort(sorted);
+        assertFalse("Error: no queries completed while writing", sorted.isEmpty());
+        assertTrue("Error: no writes completed while querying", writes[0] > 0);
+        Log.i(LOG_TAG, writes[0] + " bulkInserts, " + sorted.size() + " queries; query latency p50 "
+                + percentile(sorted, 50) + "us, p90 " + percentile(sorted, 90) + "us, p99 "
+                + percentile(sorted, 99) + "us, max " + sorted.get(sorted.size() - 1) + "us");
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Collections;
+
+/*
+    Checks that a published forecast snapshot answers the same queries the provider would, and
+    that the provider drops it as soon as the weather rows behind it change.
+ */
+public class TestForecastSnapshotCache extends AndroidTestCase {
+
+    private static final int DAYS = 7;
+    private static final String[] TODAY_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+    private static final String[] LIST_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private ContentValues[] mForecast;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mForecast = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            mForecast[i] = TestUtilities.createWeatherValues(locationRowId);
+            mForecast[i].put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(today + i * 1000L * 60 * 60 * 24));
+            mForecast[i].put(WeatherEntry.COLUMN_MAX_TEMP, 70 + i);
+            mForecast[i].put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mForecast);
+        ForecastSnapshotCache.publish(Collections.singletonList(
+                ForecastSnapshot.fromValues(TestUtilities.TEST_LOCATION, mForecast)));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private void assertSameRows(Cursor expected, Cursor actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            for (int i = 0; i < expected.getColumnCount(); i++) {
+                assertEquals("Error: column " + expected.getColumnName(i) + " differs",
+                        expected.getString(i), actual.getString(i));
+            }
+        }
+        expected.close();
+        actual.close();
+    }
+
+    public void testTodayQueryIsServedFromSnapshot() {
+        Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, System.currentTimeMillis());
+        Cursor cached = ForecastSnapshotCache.query(mContext, todayUri, TODAY_COLUMNS, null);
+        assertTrue("Error: expected a snapshot hit", cached instanceof MatrixCursor);
+        assertSameRows(mContext.getContentResolver().query(todayUri, TODAY_COLUMNS, null, null, null),
+                cached);
+    }
+
+    public void testListQueryIsServedFromSnapshot() {
+        Uri listUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, System.currentTimeMillis());
+        Cursor cached = ForecastSnapshotCache.query(mContext, listUri, LIST_COLUMNS, SORT_ORDER);
+        assertTrue("Error: expected a snapshot hit", cached instanceof MatrixCursor);
+        assertEquals(DAYS, cached.getCount());
+        assertSameRows(mContext.getContentResolver().query(listUri, LIST_COLUMNS, null, null,
+                SORT_ORDER), cached);
+    }
+
+    public void testMissesFallBackToProvider() {
+        Uri listUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, System.currentTimeMillis());
+
+        // A column the snapshot doesn't keep
+        Cursor cursor = ForecastSnapshotCache.query(mContext, listUri,
+                new String[]{WeatherEntry.COLUMN_HUMIDITY}, SORT_ORDER);
+        assertFalse(cursor instanceof MatrixCursor);
+        assertEquals(DAYS, cursor.getCount());
+        cursor.close();
+
+        // A location nobody published
+        cursor = ForecastSnapshotCache.query(mContext,
+                WeatherEntry.buildWeatherLocationWithStartDate("00000", System.currentTimeMillis()),
+                LIST_COLUMNS, SORT_ORDER);
+        assertFalse(cursor instanceof MatrixCursor);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testWriteInvalidatesSnapshot() {
+        assertNotNull(ForecastSnapshotCache.get(TestUtilities.TEST_LOCATION));
+
+        ContentValues updateValues = new ContentValues();
+        updateValues.put(WeatherEntry.COLUMN_MAX_TEMP, 101);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, updateValues,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{mForecast[0].getAsString(WeatherEntry.COLUMN_DATE)});
+
+        assertNull("Error: a write should drop the location's snapshot",
+                ForecastSnapshotCache.get(TestUtilities.TEST_LOCATION));
+        Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, System.currentTimeMillis());
+        Cursor cursor = ForecastSnapshotCache.query(mContext, todayUri, TODAY_COLUMNS, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(101.0, cursor.getDouble(2));
+        cursor.close();
+    }
+}
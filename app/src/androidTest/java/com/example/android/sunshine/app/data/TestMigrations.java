@@ -0,0 +1,192 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/*
+    Builds weather.db as each earlier version of the app left it, fills it with a forecast, and
+    checks that WeatherDbHelper upgrades it to exactly the schema a fresh install gets without
+    losing the forecast.
+ */
+public class TestMigrations extends AndroidTestCase {
+
+    /*
+        The schema as it shipped in each version.  These are frozen copies, deliberately written
+        out rather than built from WeatherContract, since the contract only describes the
+        current version.
+     */
+    private static final String[] SCHEMA_V2 = {
+            "CREATE TABLE location (_id INTEGER PRIMARY KEY,location_setting TEXT UNIQUE NOT NULL, "
+                    + "city_name TEXT NOT NULL, coord_lat REAL NOT NULL, coord_long REAL NOT NULL  );",
+            "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT,location_id INTEGER NOT NULL, "
+                    + "date INTEGER NOT NULL, short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL,"
+                    + "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, "
+                    + "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, "
+                    + " FOREIGN KEY (location_id) REFERENCES location (_id), "
+                    + " UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+    };
+
+    private static final String[] SCHEMA_V3 = {
+            "CREATE TABLE location (_id INTEGER PRIMARY KEY,location_setting TEXT UNIQUE NOT NULL, "
+                    + "city_name TEXT NOT NULL, coord_lat REAL NOT NULL, coord_long REAL NOT NULL, "
+                    + "etag TEXT, last_modified TEXT  );",
+            SCHEMA_V2[1]
+    };
+
+    private static final String[] SCHEMA_V4 = {
+            SCHEMA_V3[0],
+            SCHEMA_V3[1],
+            "CREATE INDEX IF NOT EXISTS weather_location_date ON weather (location_id, date);"
+    };
+
+    private static final Map<Integer, String[]> SCHEMAS = new HashMap<Integer, String[]>();
+
+    static {
+        SCHEMAS.put(2, SCHEMA_V2);
+        SCHEMAS.put(3, SCHEMA_V3);
+        SCHEMAS.put(4, SCHEMA_V4);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    // Creates weather.db at the given historical version, holding one location and one day.
+    private long createDatabase(int version, String[] schema) {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME, 0, null);
+        try {
+            for (String sql : schema) {
+                db.execSQL(sql);
+            }
+            ContentValues locationValues = new ContentValues();
+            locationValues.put("location_setting", TestUtilities.TEST_LOCATION);
+            locationValues.put("city_name", "North Pole");
+            locationValues.put("coord_lat", 64.7488);
+            locationValues.put("coord_long", -147.353);
+            long locationRowId = db.insert("location", null, locationValues);
+            assertTrue(locationRowId != -1);
+            assertTrue(db.insert("weather", null,
+                    TestUtilities.createWeatherValues(locationRowId)) != -1);
+            db.setVersion(version);
+            return locationRowId;
+        } finally {
+            db.close();
+        }
+    }
+
+    // Table and index definitions, as column name -> declared type and index name -> columns.
+    private static Map<String, String> describeSchema(SQLiteDatabase db) {
+        Map<String, String> schema = new TreeMap<String, String>();
+        for (String table : new String[]{LocationEntry.TABLE_NAME, WeatherEntry.TABLE_NAME}) {
+            Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+            while (columns.moveToNext()) {
+                schema.put(table + "." + columns.getString(columns.getColumnIndex("name")),
+                        columns.getString(columns.getColumnIndex("type"))
+                                + (columns.getInt(columns.getColumnIndex("notnull")) != 0
+                                ? " NOT NULL" : ""));
+            }
+            columns.close();
+
+            Cursor indexes = db.rawQuery("PRAGMA index_list(" + table + ")", null);
+            while (indexes.moveToNext()) {
+                String index = indexes.getString(indexes.getColumnIndex("name"));
+                Cursor indexColumns = db.rawQuery("PRAGMA index_info(" + index + ")", null);
+                StringBuilder description = new StringBuilder();
+                while (indexColumns.moveToNext()) {
+                    description.append(indexColumns.getString(
+                            indexColumns.getColumnIndex("name"))).append(' ');
+                }
+                indexColumns.close();
+                // Implicit indexes are named after their position, which may differ
+                schema.put(table + " index " + (index.startsWith("sqlite_autoindex")
+                        ? description.toString() : index), description.toString());
+            }
+            indexes.close();
+        }
+        return schema;
+    }
+
+    private Map<String, String> describeFreshSchema() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            new WeatherDbHelper(mContext).onCreate(db);
+            return describeSchema(db);
+        } finally {
+            db.close();
+        }
+    }
+
+    private void checkUpgradeFrom(int version) {
+        long locationRowId = createDatabase(version, SCHEMAS.get(version));
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        try {
+            assertEquals("Error: schema after upgrading from version " + version
+                            + " differs from a fresh install",
+                    describeFreshSchema(), describeSchema(db));
+
+            Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                    new String[]{Long.toString(locationRowId)}, null, null, null);
+            TestUtilities.validateCursor("Error: forecast lost upgrading from version " + version,
+                    cursor, TestUtilities.createWeatherValues(locationRowId));
+
+            cursor = db.query(LocationEntry.TABLE_NAME, null, null, null, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals(TestUtilities.TEST_LOCATION, cursor.getString(
+                    cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+            cursor.close();
+        } finally {
+            db.close();
+        }
+    }
+
+    public void testEveryVersionHasASchemaSnapshot() {
+        TreeSet<Integer> versions = new TreeSet<Integer>(SCHEMAS.keySet());
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        int current = db.getVersion();
+        db.close();
+        for (int version = WeatherDbHelper.FIRST_MIGRATABLE_VERSION; version < current; version++) {
+            assertTrue("Error: no schema snapshot for version " + version, versions.contains(version));
+        }
+    }
+
+    public void testUpgradeFromEveryVersion() {
+        for (int version : new TreeSet<Integer>(SCHEMAS.keySet())) {
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+            checkUpgradeFrom(version);
+        }
+    }
+
+    public void testTooOldIsRebuilt() {
+        createDatabase(1, SCHEMA_V2);
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        try {
+            assertEquals(describeFreshSchema(), describeSchema(db));
+            Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+            assertEquals("Error: a database too old to migrate should start empty",
+                    0, cursor.getCount());
+            cursor.close();
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -512,4 +513,180 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Reads the _id of each test row, in date order.
+    private long[] readWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+
+    // The AUTOINCREMENT high-water mark, which rises by one for every row SQLite writes anew.
+    private long readWeatherSequence() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT seq FROM sqlite_sequence WHERE name = ?",
+                new String[]{WeatherEntry.TABLE_NAME});
+        long seq = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        db.close();
+        return seq;
+    }
+
+    /*
+        Checks that an upsert leaves unchanged rows alone, updates changed rows in place, and
+        compares how many rows a repeated sync rewrites with and without it.
+     */
+    public void testUpsert() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        Uri upsertUri = WeatherEntry.buildWeatherUpsertUri();
+        assertEquals("Error: upsert uri should match the weather table",
+                WeatherProvider.WEATHER, WeatherProvider.buildUriMatcher().match(upsertUri));
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        int insertCount = mContext.getContentResolver().bulkInsert(upsertUri,
+                createBulkInsertWeatherValues(locationRowId));
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        long[] ids = readWeatherIds();
+        long sequence = readWeatherSequence();
+
+        // The same forecast again writes nothing and tells nobody
+        weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        int unchangedCount = mContext.getContentResolver().bulkInsert(upsertUri,
+                createBulkInsertWeatherValues(locationRowId));
+        weatherObserver.waitForNoNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals("Error: an identical forecast should not be written", 0, unchangedCount);
+        assertEquals(sequence, readWeatherSequence());
+
+        // One changed day is updated in place
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        int changedCount = mContext.getContentResolver().bulkInsert(upsertUri, changedValues);
+        assertEquals(1, changedCount);
+        assertEquals(sequence, readWeatherSequence());
+        long[] idsAfterUpsert = readWeatherIds();
+        assertEquals(ids.length, idsAfterUpsert.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Error: upsert should keep _ids stable", ids[i], idsAfterUpsert[i]);
+        }
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testUpsert.  Error validating WeatherEntry " + i,
+                    cursor, changedValues[i]);
+        }
+        cursor.close();
+
+        // The plain bulkInsert replaces every row, changed or not
+        int replacedCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                changedValues);
+        long rewrittenRows = readWeatherSequence() - sequence;
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, replacedCount);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, rewrittenRows);
+        assertFalse("Error: replace should have churned the _ids", ids[0] == readWeatherIds()[0]);
+
+        Log.i(LOG_TAG, "Repeated forecast of " + BULK_INSERT_RECORDS_TO_INSERT
+                + " days: replace rewrote " + rewrittenRows + " rows, upsert wrote "
+                + unchangedCount + " unchanged and " + changedCount + " for one changed day");
+    }
+
+    /*
+        Counts how many observers each kind of write wakes up: a list of one location, the detail
+        view of one day, the detail view of another day, and the location table.
+     */
+    public void testNotificationsPerOperation() {
+        ContentResolver resolver = mContext.getContentResolver();
+        TestUtilities.CountingContentObserver listObserver =
+                TestUtilities.CountingContentObserver.getCountingContentObserver();
+        TestUtilities.CountingContentObserver firstDayObserver =
+                TestUtilities.CountingContentObserver.getCountingContentObserver();
+        TestUtilities.CountingContentObserver secondDayObserver =
+                TestUtilities.CountingContentObserver.getCountingContentObserver();
+        TestUtilities.CountingContentObserver locationObserver =
+                TestUtilities.CountingContentObserver.getCountingContentObserver();
+        resolver.registerContentObserver(LocationEntry.CONTENT_URI, true, locationObserver);
+        resolver.registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, listObserver);
+
+        Uri locationUri = resolver.insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        assertEquals("insert location", 1, locationObserver.waitForCountAndReset(1));
+        assertEquals("insert location", 0, listObserver.waitForCountAndReset(0));
+
+        // A whole forecast is announced once for its location, not once per day
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, createBulkInsertWeatherValues(locationRowId));
+        assertEquals("bulkInsert", 1, listObserver.waitForCountAndReset(1));
+        assertEquals("bulkInsert", 0, locationObserver.waitForCountAndReset(0));
+
+        Cursor cursor = resolver.query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        long firstDate = cursor.getLong(0);
+        assertTrue(cursor.moveToNext());
+        long secondDate = cursor.getLong(0);
+        cursor.close();
+        resolver.registerContentObserver(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, firstDate), false, firstDayObserver);
+        resolver.registerContentObserver(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, secondDate), false, secondDayObserver);
+
+        // Updating one day only reaches that day and the list containing it
+        ContentValues updateValues = new ContentValues();
+        updateValues.put(WeatherEntry.COLUMN_MAX_TEMP, 101);
+        assertEquals(1, resolver.update(WeatherEntry.CONTENT_URI, updateValues,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(secondDate)}));
+        assertEquals("update one day", 1, listObserver.waitForCountAndReset(1));
+        assertEquals("update one day", 1, secondDayObserver.waitForCountAndReset(1));
+        assertEquals("update one day", 0, firstDayObserver.waitForCountAndReset(0));
+
+        // So does an upsert that changes one day
+        ContentValues[] upsertValues = createBulkInsertWeatherValues(locationRowId);
+        upsertValues[1].put(WeatherEntry.COLUMN_MAX_TEMP, 101);
+        upsertValues[0].put(WeatherEntry.COLUMN_MIN_TEMP, -40);
+        assertEquals(2, resolver.bulkInsert(WeatherEntry.buildWeatherUpsertUri(), upsertValues));
+        assertEquals("upsert two days", 2, listObserver.waitForCountAndReset(2));
+        assertEquals("upsert two days", 1, firstDayObserver.waitForCountAndReset(1));
+        assertEquals("upsert two days", 1, secondDayObserver.waitForCountAndReset(1));
+
+        // A location update doesn't disturb weather observers
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        resolver.update(LocationEntry.CONTENT_URI, locationValues, null, null);
+        assertEquals("update location", 1, locationObserver.waitForCountAndReset(1));
+        assertEquals("update location", 0, listObserver.waitForCountAndReset(0));
+
+        // Deleting one day
+        assertEquals(1, resolver.delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(firstDate)}));
+        assertEquals("delete one day", 1, listObserver.waitForCountAndReset(1));
+        assertEquals("delete one day", 1, firstDayObserver.waitForCountAndReset(1));
+        assertEquals("delete one day", 0, secondDayObserver.waitForCountAndReset(0));
+
+        // Deleting everything still reaches everyone
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        assertEquals("delete all", 1, listObserver.waitForCountAndReset(1));
+        assertEquals("delete all", 1, secondDayObserver.waitForCountAndReset(1));
+
+        TestUtilities.CountingContentObserver[] observers = new TestUtilities.CountingContentObserver[]{
+                listObserver, firstDayObserver, secondDayObserver, locationObserver};
+        for (TestUtilities.CountingContentObserver observer : observers) {
+            resolver.unregisterContentObserver(observer);
+            observer.quit();
+        }
+    }
 }
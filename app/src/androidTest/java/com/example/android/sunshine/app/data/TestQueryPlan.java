@@ -0,0 +1,170 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+    Checks with EXPLAIN QUERY PLAN that the per-location weather queries the provider runs are
+    served by an index instead of a scan of the weather table, and logs how long they take over
+    a database holding many locations with and without the location/date index.
+ */
+public class TestQueryPlan extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlan.class.getSimpleName();
+
+    // The columns the forecast list asks for
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    // Plan details read "SCAN TABLE weather" on older SQLite and "SCAN weather" on newer ones
+    private static final Pattern SCAN_WEATHER =
+            Pattern.compile("SCAN (TABLE )?" + WeatherEntry.TABLE_NAME + "\\b");
+
+    private static final int BENCHMARK_LOCATIONS = 50;
+    private static final int BENCHMARK_DAYS = 120;
+    private static final int BENCHMARK_QUERIES = 200;
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    private List<String> explain(String sql, String[] args) {
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        List<String> details = new ArrayList<String>();
+        int detailIndex = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            details.add(cursor.getString(detailIndex));
+        }
+        cursor.close();
+        Log.d(LOG_TAG, sql + " -> " + details);
+        return details;
+    }
+
+    private static void assertNoWeatherScan(List<String> plan) {
+        for (String detail : plan) {
+            assertFalse("Error: the weather table is scanned: " + plan,
+                    SCAN_WEATHER.matcher(detail).find());
+        }
+    }
+
+    private static void assertUsesLocationDateIndex(List<String> plan) {
+        for (String detail : plan) {
+            if (detail.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE)) {
+                return;
+            }
+        }
+        fail("Error: " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE + " is not used: " + plan);
+    }
+
+    private static void assertNoSort(List<String> plan) {
+        for (String detail : plan) {
+            assertFalse("Error: rows are sorted after being read: " + plan,
+                    detail.contains("TEMP B-TREE"));
+        }
+    }
+
+    public void testWeatherWithLocationAndStartDatePlan() {
+        List<String> plan = explain(
+                WeatherProvider.buildWeatherByLocationSettingSql(FORECAST_COLUMNS, true, SORT_ORDER),
+                new String[]{TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)});
+        assertNoWeatherScan(plan);
+        assertUsesLocationDateIndex(plan);
+        assertNoSort(plan);
+    }
+
+    public void testWeatherWithLocationPlan() {
+        List<String> plan = explain(
+                WeatherProvider.buildWeatherByLocationSettingSql(FORECAST_COLUMNS, false, SORT_ORDER),
+                new String[]{TestUtilities.TEST_LOCATION});
+        assertNoWeatherScan(plan);
+        assertUsesLocationDateIndex(plan);
+        assertNoSort(plan);
+    }
+
+    public void testWeatherWithLocationAndDatePlan() {
+        List<String> plan = explain(
+                WeatherProvider.buildWeatherByLocationSettingAndDateSql(null, null),
+                new String[]{TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)});
+        assertNoWeatherScan(plan);
+    }
+
+    private void populate() {
+        mDb.beginTransaction();
+        try {
+            for (int location = 0; location < BENCHMARK_LOCATIONS; location++) {
+                ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+                locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "location" + location);
+                long locationRowId = mDb.insert(LocationEntry.TABLE_NAME, null, locationValues);
+                for (int day = 0; day < BENCHMARK_DAYS; day++) {
+                    ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+                    weatherValues.put(WeatherEntry.COLUMN_DATE,
+                            TestUtilities.TEST_DATE + day * 1000L * 60 * 60 * 24);
+                    mDb.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private long timeListQueries() {
+        String sql = WeatherProvider.buildWeatherByLocationSettingSql(FORECAST_COLUMNS, true, SORT_ORDER);
+        // Start halfway through so that each query returns a typical two-month window
+        String startDate = Long.toString(
+                TestUtilities.TEST_DATE + BENCHMARK_DAYS / 2 * 1000L * 60 * 60 * 24);
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            Cursor cursor = mDb.rawQuery(sql,
+                    new String[]{"location" + (i % BENCHMARK_LOCATIONS), startDate});
+            assertEquals(BENCHMARK_DAYS / 2, cursor.getCount());
+            cursor.close();
+        }
+        return (System.nanoTime() - start) / BENCHMARK_QUERIES / 1000;
+    }
+
+    public void testBenchmark() {
+        populate();
+        timeListQueries();
+        long indexedMicros = timeListQueries();
+
+        mDb.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+        timeListQueries();
+        long unindexedMicros = timeListQueries();
+
+        Log.i(LOG_TAG, BENCHMARK_LOCATIONS * BENCHMARK_DAYS + " rows across "
+                + BENCHMARK_LOCATIONS + " locations: " + indexedMicros + "us per list query with "
+                + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE + ", " + unindexedMicros + "us without");
+    }
+}
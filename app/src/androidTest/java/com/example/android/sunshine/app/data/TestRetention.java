@@ -0,0 +1,123 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Collections;
+
+/*
+    Checks that a retention pass keeps exactly the days and locations the policy asks for, and
+    logs how much of the database file it gave back.
+ */
+public class TestRetention extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestRetention.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    private static final String STALE_LOCATION = "94043";
+
+    private ContentProviderClient mClient;
+    private WeatherProvider mProvider;
+    private long mNow;
+    private long mUsedLocationId;
+    private long mStaleLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mProvider = (WeatherProvider) mClient.getLocalContentProvider();
+        mNow = System.currentTimeMillis();
+
+        ContentValues used = TestUtilities.createNorthPoleLocationValues();
+        used.put(LocationEntry.COLUMN_LAST_USED, mNow);
+        mUsedLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, used));
+
+        ContentValues stale = TestUtilities.createNorthPoleLocationValues();
+        stale.put(LocationEntry.COLUMN_LOCATION_SETTING, STALE_LOCATION);
+        stale.put(LocationEntry.COLUMN_LAST_USED, mNow - 60 * DAY_IN_MILLIS);
+        mStaleLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, stale));
+
+        // Three days of history, today, and three days ahead for each location
+        long today = WeatherContract.normalizeDate(mNow);
+        ContentValues[] weather = new ContentValues[14];
+        for (int i = 0; i < 7; i++) {
+            long date = WeatherContract.normalizeDate(today + (i - 3) * DAY_IN_MILLIS);
+            weather[i] = TestUtilities.createWeatherValues(mUsedLocationId);
+            weather[i].put(WeatherEntry.COLUMN_DATE, date);
+            weather[i + 7] = TestUtilities.createWeatherValues(mStaleLocationId);
+            weather[i + 7].put(WeatherEntry.COLUMN_DATE, date);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mClient.release();
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private int countWeather(long locationId) {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(locationId)},
+                null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testKeepsPastDaysAndUsedLocations() {
+        RetentionReport report = mProvider.applyRetention(mNow, 1, 30 * DAY_IN_MILLIS,
+                Collections.<String>emptyList());
+        Log.i(LOG_TAG, report.toString());
+
+        // Yesterday, today and three days ahead stay for the location still in use
+        assertEquals(5, countWeather(mUsedLocationId));
+        assertEquals(0, countWeather(mStaleLocationId));
+        assertEquals(1, report.mEvictedLocations);
+        assertEquals(2 + 7, report.mDeletedWeatherRows);
+
+        Cursor locations = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals(1, locations.getCount());
+        locations.close();
+    }
+
+    public void testKeptLocationIsNotEvicted() {
+        RetentionReport report = mProvider.applyRetention(mNow, 0, 30 * DAY_IN_MILLIS,
+                Collections.singletonList(STALE_LOCATION));
+
+        assertEquals(0, report.mEvictedLocations);
+        assertEquals(4, countWeather(mUsedLocationId));
+        assertEquals(4, countWeather(mStaleLocationId));
+    }
+
+    public void testOnlyTheFirstPassIsAFullVacuum() {
+        // An earlier test may already have converted the database
+        mProvider.applyRetention(mNow, 0, 30 * DAY_IN_MILLIS, Collections.<String>emptyList());
+
+        RetentionReport report = mProvider.applyRetention(mNow, 0, 30 * DAY_IN_MILLIS,
+                Collections.<String>emptyList());
+        Log.i(LOG_TAG, report.toString());
+        assertFalse("Error: incremental vacuum wasn't enabled by the first pass",
+                report.mFullVacuum);
+        assertEquals(0, report.mAfter.mFreePageCount);
+    }
+}
@@ -158,6 +158,81 @@ public class TestUtilities extends AndroidTestCase {
             }.run();
             mHT.quit();
         }
+
+        public void waitForNoNotificationOrFail() {
+            // There's no event to wait for, so give a notification a fair chance to arrive.
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mHT.quit();
+            assertFalse("Error: unexpected change notification", mContentChanged);
+        }
+    }
+
+    /*
+        Counts every notification delivered to it, for tests that care about how many
+        observers a write wakes up rather than whether it woke any.
+     */
+    static class CountingContentObserver extends ContentObserver {
+        private static final long QUIET_MILLIS = 100;
+
+        final HandlerThread mHT;
+        private int mCount;
+
+        static CountingContentObserver getCountingContentObserver() {
+            HandlerThread ht = new HandlerThread("CountingObserverThread");
+            ht.start();
+            return new CountingContentObserver(ht);
+        }
+
+        private CountingContentObserver(HandlerThread ht) {
+            super(new Handler(ht.getLooper()));
+            mHT = ht;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public synchronized void onChange(boolean selfChange, Uri uri) {
+            mCount++;
+        }
+
+        private synchronized int getCount() {
+            return mCount;
+        }
+
+        // Waits for the expected number of notifications, then returns how many arrived and
+        // starts over.  None expected is nothing to wait for, so that gets a short quiet period.
+        public int waitForCountAndReset(final int expected) {
+            if (expected == 0) {
+                try {
+                    Thread.sleep(QUIET_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                new PollingCheck(5000) {
+                    @Override
+                    protected boolean check() {
+                        return getCount() >= expected;
+                    }
+                }.run();
+            }
+            synchronized (this) {
+                int count = mCount;
+                mCount = 0;
+                return count;
+            }
+        }
+
+        public void quit() {
+            mHT.quit();
+        }
     }
 
     static TestContentObserver getTestContentObserver() {
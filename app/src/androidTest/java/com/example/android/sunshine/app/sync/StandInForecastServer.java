@@ -0,0 +1,253 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    A minimal HTTP/1.1 server on the loopback interface that stands in for OpenWeatherMap.
+    It serves a single body with an ETag and Last-Modified, answers matching conditional
+    requests with 304, and counts what it sent so tests can see the work a 304 saves.  It
+    keeps connections open for further requests and gzips the body when asked, and counts
+    the connections it accepted so tests can see them being reused.  It can also stall
+    partway through a body, to stand in for a server that stops answering.
+ */
+class StandInForecastServer {
+    private final ServerSocket mServerSocket;
+    private final Thread mThread;
+
+    private volatile byte[] mBody = new byte[0];
+    private volatile String mEtag;
+    private volatile String mLastModified;
+    private volatile int mStatusCode = 200;
+    private volatile boolean mGzip = true;
+    private volatile boolean mKeepAlive = true;
+    // When not negative, bodies stop after this many bytes until shutdown
+    private volatile int mStallAfterBytes = -1;
+    private final CountDownLatch mStalled = new CountDownLatch(1);
+    private final CountDownLatch mShutdown = new CountDownLatch(1);
+    private final List<Socket> mSockets = new ArrayList<Socket>();
+
+    private volatile int mConnectionCount;
+    private volatile int mRequestCount;
+    private volatile int mNotModifiedCount;
+    private volatile long mBodyBytesSent;
+    private volatile Map<String, String> mLastRequestHeaders = new HashMap<String, String>();
+
+    StandInForecastServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        final Socket socket = mServerSocket.accept();
+                        synchronized (mSockets) {
+                            mSockets.add(socket);
+                        }
+                        mConnectionCount++;
+                        // Open connections wait for their next request, so each has a thread
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    serveConnection(socket);
+                                } catch (IOException e) {
+                                    // Closed by shutdown(), or the client went away
+                                } finally {
+                                    try {
+                                        socket.close();
+                                    } catch (IOException e) {
+                                        // Already gone
+                                    }
+                                }
+                            }
+                        }, "StandInForecastServer connection").start();
+                    } catch (IOException e) {
+                        // Closed by shutdown(), or the client went away; either way move on.
+                    }
+                }
+            }
+        }, "StandInForecastServer");
+        mThread.start();
+    }
+
+    /** Base URL to hand to {@link ForecastFetcher}. */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/data/2.5/forecast/daily?";
+    }
+
+    void setResponse(String body, String etag, String lastModified) throws IOException {
+        mBody = body.getBytes("UTF-8");
+        mEtag = etag;
+        mLastModified = lastModified;
+        mStatusCode = 200;
+    }
+
+    void setStatusCode(int statusCode) {
+        mStatusCode = statusCode;
+    }
+
+    /** Whether to gzip the body for clients that accept it; on by default. */
+    void setGzip(boolean gzip) {
+        mGzip = gzip;
+    }
+
+    /** Whether to leave connections open after a response; on by default. */
+    void setKeepAlive(boolean keepAlive) {
+        mKeepAlive = keepAlive;
+    }
+
+    /** Makes bodies stop partway, as a server that hangs mid-response would. */
+    void setStallAfterBytes(int bytes) {
+        mStallAfterBytes = bytes;
+    }
+
+    /** Waits for a response to stall, returning whether one did in time. */
+    boolean awaitStall(long timeoutMillis) throws InterruptedException {
+        return mStalled.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    int getConnectionCount() {
+        return mConnectionCount;
+    }
+
+    int getRequestCount() {
+        return mRequestCount;
+    }
+
+    int getNotModifiedCount() {
+        return mNotModifiedCount;
+    }
+
+    /** Body bytes as sent, so compressed if they were gzipped. */
+    long getBodyBytesSent() {
+        return mBodyBytesSent;
+    }
+
+    /** Header names are lower-cased. */
+    Map<String, String> getLastRequestHeaders() {
+        return mLastRequestHeaders;
+    }
+
+    void shutdown() throws IOException {
+        mShutdown.countDown();
+        mServerSocket.close();
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                socket.close();
+            }
+        }
+        try {
+            mThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serveConnection(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+        while (serve(socket, reader)) {
+            // Wait on the same connection for the next request
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(body);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return whether the connection is being kept open for another request
+     */
+    private boolean serve(Socket socket, BufferedReader reader) throws IOException {
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return false;
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        String line;
+        while ((line = reader.readLine()) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        mLastRequestHeaders = headers;
+        mRequestCount++;
+
+        StringBuilder response = new StringBuilder();
+        byte[] body = mBody;
+        String etag = mEtag;
+        String lastModified = mLastModified;
+        boolean notModified = mStatusCode == 200
+                && ((etag != null && etag.equals(headers.get("if-none-match")))
+                || (etag == null && lastModified != null
+                && lastModified.equals(headers.get("if-modified-since"))));
+        if (notModified) {
+            mNotModifiedCount++;
+            body = new byte[0];
+            response.append("HTTP/1.1 304 Not Modified\r\n");
+        } else if (mStatusCode == 200) {
+            String acceptEncoding = headers.get("accept-encoding");
+            response.append("HTTP/1.1 200 OK\r\n")
+                    .append("Content-Type: application/json; charset=utf-8\r\n");
+            if (mGzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                body = gzip(body);
+                response.append("Content-Encoding: gzip\r\n");
+            }
+            response.append("Content-Length: ").append(body.length).append("\r\n");
+        } else {
+            body = new byte[0];
+            response.append("HTTP/1.1 ").append(mStatusCode).append(" Error\r\n")
+                    .append("Content-Length: 0\r\n");
+        }
+        if (etag != null) {
+            response.append("ETag: ").append(etag).append("\r\n");
+        }
+        if (lastModified != null) {
+            response.append("Last-Modified: ").append(lastModified).append("\r\n");
+        }
+        boolean keepAlive = mKeepAlive;
+        response.append(keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n")
+                .append("\r\n");
+
+        OutputStream out = socket.getOutputStream();
+        out.write(response.toString().getBytes("ISO-8859-1"));
+        int stallAfterBytes = mStallAfterBytes;
+        if (stallAfterBytes >= 0 && stallAfterBytes < body.length) {
+            out.write(body, 0, stallAfterBytes);
+            out.flush();
+            mBodyBytesSent += stallAfterBytes;
+            mStalled.countDown();
+            try {
+                mShutdown.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+        out.write(body);
+        out.flush();
+        mBodyBytesSent += body.length;
+        return keepAlive;
+    }
+}
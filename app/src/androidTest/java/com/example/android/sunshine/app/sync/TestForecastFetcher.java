@@ -0,0 +1,106 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Runs ForecastFetcher against a local stand-in server to check that stored validators turn
+    an unchanged forecast into a 304 with no body to download or parse.
+ */
+public class TestForecastFetcher extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastFetcher.class.getSimpleName();
+
+    private static final String TEST_LOCATION = "94043";
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Sat, 20 Dec 2014 00:00:00 GMT";
+
+    private StandInForecastServer mServer;
+    private ForecastFetcher mFetcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInForecastServer();
+        mServer.setResponse(TestForecastJsonReader.createForecastJson(14), ETAG, LAST_MODIFIED);
+        mFetcher = new ForecastFetcher(mServer.getBaseUrl(), 14);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testFirstFetchIsUnconditional() {
+        LocationForecast forecast = mFetcher.fetch(TEST_LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, forecast.mStatus);
+        assertFalse(forecast.mNotModified);
+        assertEquals(14, forecast.mWeatherValues.length);
+        assertEquals("Mountain View", forecast.mCityName);
+        assertEquals(ETAG, forecast.mEtag);
+        assertEquals(LAST_MODIFIED, forecast.mLastModified);
+        assertNull("Error: no validators should be sent without stored ones",
+                mServer.getLastRequestHeaders().get("if-none-match"));
+        assertNull(mServer.getLastRequestHeaders().get("if-modified-since"));
+    }
+
+    public void testNotModifiedSkipsBody() {
+        LocationForecast first = mFetcher.fetch(TEST_LOCATION);
+        long fullBytes = mServer.getBodyBytesSent();
+        assertTrue(fullBytes > 0);
+
+        LocationForecast second = mFetcher.fetch(
+                new LocationForecast(TEST_LOCATION, first.mEtag, first.mLastModified));
+
+        assertEquals(ETAG, mServer.getLastRequestHeaders().get("if-none-match"));
+        assertEquals(LAST_MODIFIED, mServer.getLastRequestHeaders().get("if-modified-since"));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, second.mStatus);
+        assertTrue("Error: an unchanged forecast should be reported as not modified",
+                second.mNotModified);
+        assertEquals("Error: nothing should be parsed from a 304", 0, second.mWeatherValues.length);
+        assertEquals(1, mServer.getNotModifiedCount());
+        assertEquals("Error: a 304 should not carry a body", fullBytes, mServer.getBodyBytesSent());
+        // Validators are kept so the next sync can ask again
+        assertEquals(ETAG, second.mEtag);
+
+        Log.i(LOG_TAG, "304 saved " + fullBytes + " body bytes and "
+                + first.mWeatherValues.length + " parsed days");
+    }
+
+    public void testLastModifiedAloneIsEnough() {
+        mServer.setResponse(TestForecastJsonReader.createForecastJson(14), null, LAST_MODIFIED);
+        LocationForecast first = mFetcher.fetch(TEST_LOCATION);
+        assertNull(first.mEtag);
+
+        LocationForecast second = mFetcher.fetch(
+                new LocationForecast(TEST_LOCATION, first.mEtag, first.mLastModified));
+        assertTrue(second.mNotModified);
+        assertNull(mServer.getLastRequestHeaders().get("if-none-match"));
+    }
+
+    public void testChangedForecastIsDownloaded() throws Exception {
+        LocationForecast first = mFetcher.fetch(TEST_LOCATION);
+        mServer.setResponse(TestForecastJsonReader.createForecastJson(16), "\"forecast-v2\"",
+                "Sun, 21 Dec 2014 00:00:00 GMT");
+
+        LocationForecast second = mFetcher.fetch(
+                new LocationForecast(TEST_LOCATION, first.mEtag, first.mLastModified));
+
+        assertFalse(second.mNotModified);
+        assertEquals(16, second.mWeatherValues.length);
+        assertEquals("\"forecast-v2\"", second.mEtag);
+        assertEquals(0, mServer.getNotModifiedCount());
+    }
+
+    public void testServerError() {
+        mServer.setStatusCode(500);
+        LocationForecast forecast = mFetcher.fetch(
+                new LocationForecast(TEST_LOCATION, ETAG, LAST_MODIFIED));
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, forecast.mStatus);
+        assertFalse(forecast.mNotModified);
+        assertEquals(0, forecast.mWeatherValues.length);
+    }
+}
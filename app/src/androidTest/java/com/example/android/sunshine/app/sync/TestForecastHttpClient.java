@@ -0,0 +1,97 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Runs fetches through a ForecastHttpClient against a local stand-in server to check that
+    connections are reused between requests, that bodies come down compressed, and that what
+    each request cost is counted.
+ */
+public class TestForecastHttpClient extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastHttpClient.class.getSimpleName();
+
+    private static final String TEST_LOCATION = "94043";
+    private static final int DAYS = 14;
+    private static final int FETCHES = 5;
+
+    private StandInForecastServer mServer;
+    private ForecastHttpClient mClient;
+    private ForecastFetcher mFetcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInForecastServer();
+        mServer.setResponse(TestForecastJsonReader.createForecastJson(DAYS), null, null);
+        mClient = new ForecastHttpClient();
+        mFetcher = new ForecastFetcher(mClient, mServer.getBaseUrl(), DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testConnectionIsReused() {
+        for (int i = 0; i < FETCHES; i++) {
+            LocationForecast forecast = mFetcher.fetch(TEST_LOCATION);
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, forecast.mStatus);
+            assertEquals(DAYS, forecast.mWeatherValues.length);
+        }
+
+        Log.i(LOG_TAG, FETCHES + " fetches over " + mServer.getConnectionCount()
+                + " connections");
+        assertEquals(FETCHES, mServer.getRequestCount());
+        assertEquals("Error: every fetch opened its own connection",
+                1, mServer.getConnectionCount());
+    }
+
+    public void testConnectionClosedByServerIsReplaced() {
+        mServer.setKeepAlive(false);
+        for (int i = 0; i < FETCHES; i++) {
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK,
+                    mFetcher.fetch(TEST_LOCATION).mStatus);
+        }
+        assertEquals(FETCHES, mServer.getConnectionCount());
+    }
+
+    public void testBodyIsCompressed() {
+        LocationForecast forecast = mFetcher.fetch(TEST_LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, forecast.mStatus);
+        assertEquals("Error: the decompressed forecast wasn't read", DAYS,
+                forecast.mWeatherValues.length);
+        String acceptEncoding = mServer.getLastRequestHeaders().get("accept-encoding");
+        assertNotNull("Error: gzip wasn't asked for", acceptEncoding);
+        assertTrue(acceptEncoding.contains("gzip"));
+
+        long wireBytes = mClient.getWireBytes();
+        long bodyBytes = mClient.getBodyBytes();
+        Log.i(LOG_TAG, "Forecast body: " + wireBytes + " bytes on the wire for " + bodyBytes
+                + " of JSON, " + (100 * wireBytes / bodyBytes) + "%");
+        assertEquals(mServer.getBodyBytesSent(), wireBytes);
+        assertTrue("Error: the body wasn't compressed", wireBytes * 2 < bodyBytes);
+    }
+
+    public void testUncompressedBodyIsAccounted() {
+        mServer.setGzip(false);
+        LocationForecast forecast = mFetcher.fetch(TEST_LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, forecast.mStatus);
+        assertEquals(mServer.getBodyBytesSent(), mClient.getWireBytes());
+        assertEquals(mClient.getWireBytes(), mClient.getBodyBytes());
+    }
+
+    public void testEveryRequestIsCounted() {
+        LocationForecast first = mFetcher.fetch(TEST_LOCATION);
+        mServer.setStatusCode(500);
+        mFetcher.fetch(TEST_LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, first.mStatus);
+        assertEquals("Error: a failed request wasn't counted", 2, mClient.getRequestCount());
+        assertTrue(mClient.getLatencyMillis() >= 0);
+    }
+}
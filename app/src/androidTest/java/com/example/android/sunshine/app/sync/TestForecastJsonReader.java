@@ -0,0 +1,203 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks that the streaming forecast reader produces exactly what the org.json tree produced,
+    and logs how the two compare on a 14 and a 16 day response.
+ */
+public class TestForecastJsonReader extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonReader.class.getSimpleName();
+
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    static String createForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0117,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(1419120000L + i * 86400L)
+                    .append(",\"temp\":{\"day\":12.5,\"min\":").append(5 + i * 0.25)
+                    .append(",\"max\":").append(14 + i * 0.5)
+                    .append(",\"night\":6.1,\"eve\":11.3,\"morn\":7.2},")
+                    .append("\"pressure\":").append(1012.33 + i)
+                    .append(",\"humidity\":").append(40 + i)
+                    .append(",\"weather\":[{\"id\":").append(800 + (i % 5))
+                    .append(",\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}],")
+                    .append("\"speed\":").append(1.5 + i * 0.1)
+                    .append(",\"deg\":").append(180 + i)
+                    .append(",\"clouds\":0}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    static class CollectingCallback implements ForecastJsonReader.Callback {
+        String mCityName;
+        double mLat;
+        double mLon;
+        final List<ContentValues> mDays = new ArrayList<ContentValues>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mCityName = cityName;
+            mLat = lat;
+            mLon = lon;
+        }
+
+        @Override
+        public void onDay(int dayIndex, ContentValues weatherValues) {
+            assertEquals("Error: days were not emitted in order", mDays.size(), dayIndex);
+            mDays.add(weatherValues);
+        }
+    }
+
+    private static CollectingCallback readStreaming(String json) throws IOException, JSONException {
+        CollectingCallback callback = new CollectingCallback();
+        int code = ForecastJsonReader.read(new ByteArrayInputStream(json.getBytes("UTF-8")), callback);
+        assertEquals(HttpURLConnection.HTTP_OK, code);
+        return callback;
+    }
+
+    private static CollectingCallback readTree(String json) throws JSONException {
+        CollectingCallback callback = new CollectingCallback();
+        int code = ForecastJsonReader.read(json, callback);
+        assertEquals(HttpURLConnection.HTTP_OK, code);
+        return callback;
+    }
+
+    public void testStreamingMatchesTree() throws Throwable {
+        String json = createForecastJson(14);
+        CollectingCallback streamed = readStreaming(json);
+        CollectingCallback tree = readTree(json);
+
+        assertEquals("Mountain View", streamed.mCityName);
+        assertEquals(tree.mCityName, streamed.mCityName);
+        assertEquals(tree.mLat, streamed.mLat);
+        assertEquals(tree.mLon, streamed.mLon);
+        assertEquals(14, streamed.mDays.size());
+        assertEquals(tree.mDays.size(), streamed.mDays.size());
+        for (int i = 0; i < tree.mDays.size(); i++) {
+            assertEquals("Error: day " + i + " differs between the streaming and tree readers",
+                    tree.mDays.get(i), streamed.mDays.get(i));
+        }
+        assertFalse(streamed.mDays.get(0).containsKey(WeatherEntry.COLUMN_LOC_KEY));
+        assertFalse(streamed.mDays.get(0).containsKey(WeatherEntry.COLUMN_DATE));
+    }
+
+    public void testCityAfterList() throws Throwable {
+        String json = "{\"cod\":200,\"list\":[{\"temp\":{\"min\":1,\"max\":2},\"pressure\":3,"
+                + "\"humidity\":4,\"weather\":[{\"id\":500,\"main\":\"Rain\"}],\"speed\":5,\"deg\":6}],"
+                + "\"city\":{\"name\":\"North Pole\",\"coord\":{\"lat\":64.7488,\"lon\":-147.353}}}";
+        CollectingCallback streamed = readStreaming(json);
+        assertEquals("North Pole", streamed.mCityName);
+        assertEquals(1, streamed.mDays.size());
+        assertEquals(500, (int) streamed.mDays.get(0).getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+    }
+
+    public void testErrorCode() throws Throwable {
+        String json = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+        CollectingCallback callback = new CollectingCallback();
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, ForecastJsonReader.read(
+                new ByteArrayInputStream(json.getBytes("UTF-8")), callback));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, ForecastJsonReader.read(json, callback));
+        assertNull(callback.mCityName);
+        assertTrue(callback.mDays.isEmpty());
+    }
+
+    public void testErrorCodeAfterCity() throws Throwable {
+        // The city comes first in OWM's responses, before the code says whether to use it
+        String json = "{\"city\":{\"name\":\"North Pole\",\"coord\":{\"lat\":64.7488,"
+                + "\"lon\":-147.353}},\"cod\":\"500\",\"message\":\"Internal error\"}";
+        CollectingCallback callback = new CollectingCallback();
+        assertEquals(HttpURLConnection.HTTP_INTERNAL_ERROR, ForecastJsonReader.read(
+                new ByteArrayInputStream(json.getBytes("UTF-8")), callback));
+        assertEquals(HttpURLConnection.HTTP_INTERNAL_ERROR, ForecastJsonReader.read(json, callback));
+        assertNull("Error: the city of an error response was passed on", callback.mCityName);
+    }
+
+    public void testMissingFieldIsInvalid() throws Throwable {
+        String json = "{\"city\":{\"name\":\"X\",\"coord\":{\"lat\":1,\"lon\":2}},\"list\":[{\"pressure\":1}]}";
+        try {
+            readStreaming(json);
+            fail("Error: a day without temperatures should be rejected");
+        } catch (JSONException expected) {
+        }
+        try {
+            readStreaming("{\"city\":");
+            fail("Error: a truncated body should be rejected");
+        } catch (JSONException | IOException expected) {
+        }
+    }
+
+    public void testBenchmark14Days() throws Throwable {
+        benchmark(14);
+    }
+
+    public void testBenchmark16Days() throws Throwable {
+        benchmark(16);
+    }
+
+    /**
+     * The tree path is measured from the response String, as the sync adapter used to do after
+     * buffering the body; the streaming path reads the bytes directly.  Allocation counts are
+     * per thread and only meaningful relative to each other.
+     */
+    @SuppressWarnings("deprecation")
+    private void benchmark(int numDays) throws Throwable {
+        String json = createForecastJson(numDays);
+        byte[] body = json.getBytes("UTF-8");
+
+        // Warm both paths up so the JIT doesn't skew the first run.
+        for (int i = 0; i < 20; i++) {
+            readStreaming(json);
+            readTree(json);
+        }
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocSize();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                ForecastJsonReader.read(new ByteArrayInputStream(body), new CollectingCallback());
+            }
+            long streamingNanos = System.nanoTime() - start;
+            long streamingBytes = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocSize();
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                // Include the String the old code built from the body
+                ForecastJsonReader.read(new String(body, "UTF-8"), new CollectingCallback());
+            }
+            long treeNanos = System.nanoTime() - start;
+            long treeBytes = Debug.getThreadAllocSize();
+
+            Log.i(LOG_TAG, numDays + " days: streaming "
+                    + (streamingNanos / BENCHMARK_ITERATIONS / 1000) + "us, "
+                    + (streamingBytes / BENCHMARK_ITERATIONS) + " bytes/parse; tree "
+                    + (treeNanos / BENCHMARK_ITERATIONS / 1000) + "us, "
+                    + (treeBytes / BENCHMARK_ITERATIONS) + " bytes/parse");
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
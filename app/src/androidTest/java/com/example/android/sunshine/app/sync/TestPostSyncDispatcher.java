@@ -0,0 +1,122 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+    Checks that the post-sync consumers share one forecast, run side by side, are stopped when
+    they run out of time, and run once for a burst of syncs.
+ */
+public class TestPostSyncDispatcher extends AndroidTestCase {
+
+    private static final long WINDOW_MILLIS = 500;
+
+    private final AtomicInteger mLoads = new AtomicInteger();
+
+    private PostSyncDispatcher createDispatcher() {
+        return new PostSyncDispatcher(mContext, WINDOW_MILLIS) {
+            @Override
+            ForecastSnapshot loadForecast() {
+                mLoads.incrementAndGet();
+                return ForecastSnapshot.fromValues("99705", new ContentValues[0]);
+            }
+        };
+    }
+
+    public void testConsumersShareOneForecastAndRunSideBySide() throws InterruptedException {
+        PostSyncDispatcher dispatcher = createDispatcher();
+        // Each consumer waits for the other, which only works if they run at the same time
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicReference<ForecastSnapshot> first = new AtomicReference<ForecastSnapshot>();
+        final AtomicReference<ForecastSnapshot> second = new AtomicReference<ForecastSnapshot>();
+        int a = dispatcher.addConsumer("first", 5000, new PostSyncDispatcher.Consumer() {
+            @Override
+            public void onForecastStored(ForecastSnapshot forecast) throws Exception {
+                barrier.await(5, TimeUnit.SECONDS);
+                first.set(forecast);
+                done.countDown();
+            }
+        });
+        int b = dispatcher.addConsumer("second", 5000, new PostSyncDispatcher.Consumer() {
+            @Override
+            public void onForecastStored(ForecastSnapshot forecast) throws Exception {
+                barrier.await(5, TimeUnit.SECONDS);
+                second.set(forecast);
+                done.countDown();
+            }
+        });
+
+        dispatcher.dispatch(a | b);
+        assertTrue("Error: the consumers didn't run side by side", done.await(5, TimeUnit.SECONDS));
+        assertNotNull(first.get());
+        assertSame("Error: the consumers were given different forecasts", first.get(), second.get());
+        assertEquals(1, mLoads.get());
+    }
+
+    public void testHungConsumerIsStopped() throws InterruptedException {
+        PostSyncDispatcher dispatcher = createDispatcher();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CountDownLatch othersRan = new CountDownLatch(1);
+        int hung = dispatcher.addConsumer("hung", 200, new PostSyncDispatcher.Consumer() {
+            @Override
+            public void onForecastStored(ForecastSnapshot forecast) {
+                try {
+                    Thread.sleep(60 * 1000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        int quick = dispatcher.addConsumer("quick", 200, new PostSyncDispatcher.Consumer() {
+            @Override
+            public void onForecastStored(ForecastSnapshot forecast) {
+                othersRan.countDown();
+            }
+        });
+
+        dispatcher.dispatch(hung | quick);
+        assertTrue("Error: the other consumer was held up", othersRan.await(1, TimeUnit.SECONDS));
+        assertTrue("Error: the hung consumer wasn't stopped",
+                interrupted.await(2, TimeUnit.SECONDS));
+    }
+
+    public void testBurstOfSyncsIsCoalesced() throws InterruptedException {
+        PostSyncDispatcher dispatcher = createDispatcher();
+        final AtomicInteger firstRuns = new AtomicInteger();
+        final AtomicInteger secondRuns = new AtomicInteger();
+        int first = dispatcher.addConsumer("first", 1000, new PostSyncDispatcher.Consumer() {
+            @Override
+            public void onForecastStored(ForecastSnapshot forecast) {
+                firstRuns.incrementAndGet();
+            }
+        });
+        int second = dispatcher.addConsumer("second", 1000, new PostSyncDispatcher.Consumer() {
+            @Override
+            public void onForecastStored(ForecastSnapshot forecast) {
+                secondRuns.incrementAndGet();
+            }
+        });
+
+        // The first sync runs straight away, and the rest wait for the end of the window
+        dispatcher.dispatch(first);
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(20);
+            dispatcher.dispatch(first);
+        }
+        dispatcher.dispatch(second);
+        Thread.sleep(WINDOW_MILLIS * 3);
+
+        assertEquals("Error: the burst wasn't coalesced", 2, firstRuns.get());
+        assertEquals("Error: a consumer flagged during the window didn't run", 1, secondRuns.get());
+        assertEquals(2, mLoads.get());
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+    Runs fetches against a local stand-in server that stalls partway through the forecast, to
+    check that a read timeout or a cancelled sync frees the fetch rather than leaving it
+    waiting on the server.
+ */
+public class TestSyncCancellation extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncCancellation.class.getSimpleName();
+
+    private static final String TEST_LOCATION = "94043";
+    private static final int DAYS = 14;
+    private static final int STALL_AFTER_BYTES = 100;
+    private static final int SHORT_TIMEOUT_MILLIS = 500;
+    // Long enough that a test finishing in time means the timeout wasn't what freed the fetch
+    private static final int LONG_TIMEOUT_MILLIS = 60 * 1000;
+    private static final long BUDGET_MILLIS = 60 * 1000;
+
+    private StandInForecastServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInForecastServer();
+        mServer.setResponse(TestForecastJsonReader.createForecastJson(DAYS), null, null);
+        mServer.setGzip(false);
+        mServer.setStallAfterBytes(STALL_AFTER_BYTES);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testStalledBodyTimesOut() {
+        ForecastFetcher fetcher = new ForecastFetcher(
+                new ForecastHttpClient(SHORT_TIMEOUT_MILLIS, SHORT_TIMEOUT_MILLIS),
+                mServer.getBaseUrl(), DAYS, new SyncCancellation(BUDGET_MILLIS));
+
+        long start = SystemClock.elapsedRealtime();
+        LocationForecast forecast = fetcher.fetch(TEST_LOCATION);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "Stalled fetch gave up after " + elapsed + "ms");
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, forecast.mStatus);
+        assertEquals(0, forecast.mWeatherValues.length);
+        assertTrue("Error: the read timeout didn't free the fetch", elapsed < 5000);
+    }
+
+    public void testCancelFreesStalledFetch() throws InterruptedException {
+        final SyncCancellation cancellation = new SyncCancellation(BUDGET_MILLIS);
+        final ForecastFetcher fetcher = new ForecastFetcher(
+                new ForecastHttpClient(LONG_TIMEOUT_MILLIS, LONG_TIMEOUT_MILLIS),
+                mServer.getBaseUrl(), DAYS, cancellation);
+        final AtomicReference<LocationForecast> result = new AtomicReference<LocationForecast>();
+        final CountDownLatch done = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(fetcher.fetch(TEST_LOCATION));
+                done.countDown();
+            }
+        }).start();
+
+        assertTrue("Error: the server never stalled", mServer.awaitStall(5000));
+        long start = SystemClock.elapsedRealtime();
+        cancellation.cancel();
+        assertTrue("Error: cancelling didn't free the fetch", done.await(5, TimeUnit.SECONDS));
+
+        Log.i(LOG_TAG, "Cancelled fetch returned after "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+        assertEquals("Error: a cancelled fetch should be left unknown, not reported as failed",
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN, result.get().mStatus);
+    }
+
+    public void testCancelledSyncMakesNoRequests() {
+        SyncCancellation cancellation = new SyncCancellation(BUDGET_MILLIS);
+        cancellation.cancel();
+        ForecastFetcher fetcher = new ForecastFetcher(new ForecastHttpClient(),
+                mServer.getBaseUrl(), DAYS, cancellation);
+
+        LocationForecast forecast = fetcher.fetch(TEST_LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN, forecast.mStatus);
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    public void testBudgetRunsOut() throws InterruptedException {
+        SyncCancellation cancellation = new SyncCancellation(100);
+        assertFalse(cancellation.isCanceled());
+        Thread.sleep(200);
+        assertTrue("Error: the sync kept going past its budget", cancellation.isCanceled());
+        assertEquals(0, cancellation.getRemainingMillis());
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Checks that overlapping syncs of the same locations run once, and that syncs asked for
+    soon after a complete one are skipped, against a clock the test moves by hand.
+ */
+public class TestSyncCoalescer extends AndroidTestCase {
+
+    private static final String PREFS_NAME = "test_sync_coalescer";
+    private static final long MAX_AGE_MILLIS = 15 * 60 * 1000;
+    private static final long WAIT_MILLIS = 5000;
+
+    private static final String KEY = SyncCoalescer.getKey(Arrays.asList("94043", "10001"));
+
+    private SharedPreferences mPrefs;
+    private long mNowMillis = 1450000000000L;
+
+    private final SyncRetryPolicy.Clock mClock = new SyncRetryPolicy.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return mNowMillis;
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    private SyncCoalescer createCoalescer() {
+        return new SyncCoalescer(mPrefs, "locations", "time", mClock);
+    }
+
+    /**
+     * A sync that counts its runs, and doesn't finish until it's let go.
+     */
+    private static class BlockingSync implements Callable<Void> {
+        final AtomicInteger mRuns = new AtomicInteger();
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        RuntimeException mFailure;
+
+        @Override
+        public Void call() throws Exception {
+            mRuns.incrementAndGet();
+            mStarted.countDown();
+            mRelease.await();
+            if (mFailure != null) {
+                throw mFailure;
+            }
+            return null;
+        }
+    }
+
+    private static Future<Boolean> runInBackground(ExecutorService executor,
+                                                   final SyncCoalescer coalescer,
+                                                   final String key,
+                                                   final Callable<Void> sync) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return coalescer.run(key, sync, WAIT_MILLIS);
+            }
+        });
+    }
+
+    public void testOverlappingSyncsRunOnce() throws Exception {
+        SyncCoalescer coalescer = createCoalescer();
+        BlockingSync first = new BlockingSync();
+        BlockingSync late = new BlockingSync();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Boolean> leader = runInBackground(executor, coalescer, KEY, first);
+            assertTrue(first.mStarted.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            Future<Boolean> joiner1 = runInBackground(executor, coalescer, KEY, late);
+            Future<Boolean> joiner2 = runInBackground(executor, coalescer, KEY, late);
+
+            // The late callers wait on the running sync rather than returning straight away
+            try {
+                joiner1.get(200, TimeUnit.MILLISECONDS);
+                fail("Error: a late caller didn't wait for the running sync");
+            } catch (TimeoutException expected) {
+            }
+            first.mRelease.countDown();
+
+            assertTrue("Error: the first caller should have run the sync",
+                    leader.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            assertFalse("Error: a late caller ran its own sync",
+                    joiner1.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            assertFalse(joiner2.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(1, first.mRuns.get());
+            assertEquals("Error: the late callers' syncs shouldn't have run",
+                    0, late.mRuns.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testDifferentLocationsAreNotJoined() throws Exception {
+        SyncCoalescer coalescer = createCoalescer();
+        BlockingSync first = new BlockingSync();
+        BlockingSync other = new BlockingSync();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> leader = runInBackground(executor, coalescer, KEY, first);
+            assertTrue(first.mStarted.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            Future<Boolean> second = runInBackground(executor, coalescer,
+                    SyncCoalescer.getKey(Arrays.asList("94043", "60601")), other);
+            assertTrue("Error: a sync of other locations waited on the running one",
+                    other.mStarted.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            first.mRelease.countDown();
+            other.mRelease.countDown();
+            assertTrue(leader.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            assertTrue(second.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testLateCallersSeeTheFailure() throws Exception {
+        SyncCoalescer coalescer = createCoalescer();
+        BlockingSync first = new BlockingSync();
+        first.mFailure = new IllegalStateException("Provider went away");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> leader = runInBackground(executor, coalescer, KEY, first);
+            assertTrue(first.mStarted.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            BlockingSync late = new BlockingSync();
+            late.mRelease.countDown();
+            Future<Boolean> joiner = runInBackground(executor, coalescer, KEY, late);
+            Thread.sleep(200);
+            first.mRelease.countDown();
+            for (Future<Boolean> caller : Arrays.asList(leader, joiner)) {
+                try {
+                    caller.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    fail("Error: the sync's failure wasn't passed on");
+                } catch (ExecutionException e) {
+                    // Wrapped once by the coalescer, and again by the test's executor
+                    assertSame(first.mFailure, e.getCause().getCause());
+                }
+            }
+            assertEquals("Error: the late caller ran its own sync", 0, late.mRuns.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testFinishedSyncIsNotJoined() throws Exception {
+        SyncCoalescer coalescer = createCoalescer();
+        final AtomicInteger runs = new AtomicInteger();
+        Callable<Void> sync = new Callable<Void>() {
+            @Override
+            public Void call() {
+                runs.incrementAndGet();
+                return null;
+            }
+        };
+        assertTrue(coalescer.run(KEY, sync, WAIT_MILLIS));
+        assertTrue("Error: a finished sync was joined", coalescer.run(KEY, sync, WAIT_MILLIS));
+        assertEquals(2, runs.get());
+    }
+
+    public void testRecentSyncIsFresh() {
+        SyncCoalescer coalescer = createCoalescer();
+        assertFalse("Error: fresh before anything was synced",
+                coalescer.isFresh(KEY, MAX_AGE_MILLIS));
+
+        coalescer.markFresh(KEY);
+        assertTrue(coalescer.isFresh(KEY, MAX_AGE_MILLIS));
+        assertFalse("Error: a max age of 0 should always sync", coalescer.isFresh(KEY, 0));
+
+        mNowMillis += MAX_AGE_MILLIS - 1;
+        assertTrue(coalescer.isFresh(KEY, MAX_AGE_MILLIS));
+        mNowMillis += 1;
+        assertFalse("Error: still fresh after the max age",
+                coalescer.isFresh(KEY, MAX_AGE_MILLIS));
+    }
+
+    public void testChangedLocationsAreNotFresh() {
+        SyncCoalescer coalescer = createCoalescer();
+        coalescer.markFresh(KEY);
+        assertFalse("Error: a new location was taken as synced", coalescer.isFresh(
+                SyncCoalescer.getKey(Arrays.asList("94043", "10001", "60601")), MAX_AGE_MILLIS));
+        assertFalse("Error: a replaced location was taken as synced", coalescer.isFresh(
+                SyncCoalescer.getKey(Arrays.asList("94043", "60601")), MAX_AGE_MILLIS));
+    }
+
+    public void testReorderedLocationsAreFresh() {
+        // Switching to a saved location puts it first, but it was synced with the rest
+        SyncCoalescer coalescer = createCoalescer();
+        coalescer.markFresh(SyncCoalescer.getKey(Arrays.asList("94043", "10001", "60601")));
+        assertTrue("Error: a new preferred location was taken as unsynced", coalescer.isFresh(
+                SyncCoalescer.getKey(Arrays.asList("60601", "94043", "10001")), MAX_AGE_MILLIS));
+        assertEquals(SyncCoalescer.getKey(Arrays.asList("94043", "10001")),
+                SyncCoalescer.getKey(Arrays.asList("10001", "94043")));
+    }
+
+    public void testClockSetBackIsNotFresh() {
+        SyncCoalescer coalescer = createCoalescer();
+        coalescer.markFresh(KEY);
+        mNowMillis -= 60 * 1000;
+        assertFalse(coalescer.isFresh(KEY, MAX_AGE_MILLIS));
+    }
+
+    public void testFreshnessSurvivesRestart() {
+        createCoalescer().markFresh(KEY);
+        assertTrue("Error: the last sync was forgotten with the coalescer",
+                createCoalescer().isFresh(KEY, MAX_AGE_MILLIS));
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.test.AndroidTestCase;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/*
+    Checks how sync failures are reported and backed off from, against a fixed clock and
+    chosen jitter so every delay is known in advance.
+ */
+public class TestSyncRetryPolicy extends AndroidTestCase {
+
+    private static final String PREFS_NAME = "test_sync_retry";
+    private static final String FAILURES_KEY = "failures";
+    private static final long NOW_MILLIS = 1450000000000L;
+
+    private SharedPreferences mPrefs;
+    private double mJitter;
+
+    private final SyncRetryPolicy.Clock mClock = new SyncRetryPolicy.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return NOW_MILLIS;
+        }
+    };
+
+    // Stands in for the random jitter, returning whatever the test chose
+    private final Random mRandom = new Random() {
+        @Override
+        public double nextDouble() {
+            return mJitter;
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    private SyncRetryPolicy createPolicy() {
+        return new SyncRetryPolicy(mPrefs, FAILURES_KEY, mClock, mRandom);
+    }
+
+    private static LocationForecast forecast(int status, int responseCode) {
+        LocationForecast forecast = new LocationForecast("94043");
+        forecast.mStatus = status;
+        forecast.mResponseCode = responseCode;
+        return forecast;
+    }
+
+    private long failSync(SyncRetryPolicy policy) {
+        SyncResult result = new SyncResult();
+        policy.record(SyncRetryPolicy.FAILURE_IO, result);
+        long delay = policy.onSyncFinished(result);
+        assertEquals("Error: the framework wasn't told when to retry",
+                (NOW_MILLIS + delay) / 1000, result.delayUntil);
+        return delay;
+    }
+
+    public void testFailuresAreClassified() {
+        assertEquals(SyncRetryPolicy.FAILURE_NONE, SyncRetryPolicy.classify(
+                forecast(SunshineSyncAdapter.LOCATION_STATUS_OK, 200)));
+        assertEquals(SyncRetryPolicy.FAILURE_IO, SyncRetryPolicy.classify(
+                forecast(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, 0)));
+        assertEquals(SyncRetryPolicy.FAILURE_SERVER, SyncRetryPolicy.classify(
+                forecast(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, 503)));
+        assertEquals(SyncRetryPolicy.FAILURE_INVALID_DATA, SyncRetryPolicy.classify(
+                forecast(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID, 200)));
+        assertEquals(SyncRetryPolicy.FAILURE_UNKNOWN_LOCATION, SyncRetryPolicy.classify(
+                forecast(SunshineSyncAdapter.LOCATION_STATUS_INVALID, 404)));
+    }
+
+    public void testFailuresAreReportedInSyncResult() {
+        SyncRetryPolicy policy = createPolicy();
+        SyncResult result = new SyncResult();
+        policy.record(SyncRetryPolicy.FAILURE_NONE, result);
+        assertFalse(result.hasError());
+
+        policy.record(SyncRetryPolicy.FAILURE_UNKNOWN_LOCATION, result);
+        assertEquals(1, result.stats.numSkippedEntries);
+        assertFalse("Error: an unknown location shouldn't be retried", result.hasError());
+
+        policy.record(SyncRetryPolicy.FAILURE_INVALID_DATA, result);
+        assertTrue("Error: invalid data should be a hard error", result.hasHardError());
+        assertFalse(result.hasSoftError());
+
+        result = new SyncResult();
+        policy.record(SyncRetryPolicy.FAILURE_IO, result);
+        policy.record(SyncRetryPolicy.FAILURE_SERVER, result);
+        assertEquals(2, result.stats.numIoExceptions);
+        assertTrue("Error: network and server failures should be retried",
+                result.hasSoftError());
+    }
+
+    public void testBackoffDoublesUpToCap() {
+        SyncRetryPolicy policy = createPolicy();
+        mJitter = 0.999999;
+        long expected = SyncRetryPolicy.BASE_DELAY_MILLIS;
+        for (int failures = 1; failures <= 12; failures++) {
+            long delay = failSync(policy);
+            assertTrue("Error: failure " + failures + " waited " + delay + "ms, over "
+                    + expected, delay <= expected);
+            assertTrue("Error: failure " + failures + " waited " + delay + "ms",
+                    delay > expected - 10);
+            expected = Math.min(expected * 2, SyncRetryPolicy.MAX_DELAY_MILLIS);
+        }
+        assertEquals(SyncRetryPolicy.MAX_DELAY_MILLIS, expected);
+    }
+
+    public void testJitterKeepsAtLeastHalfTheBackoff() {
+        SyncRetryPolicy policy = createPolicy();
+        mJitter = 0;
+        assertEquals(SyncRetryPolicy.BASE_DELAY_MILLIS / 2, failSync(policy));
+        assertEquals(SyncRetryPolicy.BASE_DELAY_MILLIS, failSync(policy));
+    }
+
+    public void testSuccessResetsBackoff() {
+        SyncRetryPolicy policy = createPolicy();
+        mJitter = 0;
+        failSync(policy);
+        failSync(policy);
+        failSync(policy);
+
+        SyncResult success = new SyncResult();
+        policy.record(SyncRetryPolicy.FAILURE_NONE, success);
+        assertEquals(0, policy.onSyncFinished(success));
+        assertEquals("Error: a successful sync shouldn't be delayed", 0, success.delayUntil);
+
+        assertEquals(SyncRetryPolicy.BASE_DELAY_MILLIS / 2, failSync(policy));
+    }
+
+    public void testHardErrorsAreNotBackedOff() {
+        SyncRetryPolicy policy = createPolicy();
+        SyncResult result = new SyncResult();
+        policy.record(SyncRetryPolicy.FAILURE_INVALID_DATA, result);
+        policy.record(SyncRetryPolicy.FAILURE_UNKNOWN_LOCATION, result);
+        assertEquals(0, policy.onSyncFinished(result));
+        assertEquals(0, result.delayUntil);
+    }
+
+    public void testBackoffSurvivesRestart() {
+        mJitter = 0;
+        failSync(createPolicy());
+        failSync(createPolicy());
+        assertEquals("Error: the failure count was lost with the policy",
+                SyncRetryPolicy.BASE_DELAY_MILLIS * 2, failSync(createPolicy()));
+    }
+
+    public void testJitterSpreadsDevicesOut() {
+        // Devices that failed together in an outage should come back at different times
+        long backoff = SyncRetryPolicy.BASE_DELAY_MILLIS * 4;
+        Set<Long> delays = new HashSet<Long>();
+        Random seeded = new Random(42);
+        for (int device = 0; device < 100; device++) {
+            SyncRetryPolicy policy = new SyncRetryPolicy(mPrefs, FAILURES_KEY, mClock, seeded);
+            long delay = policy.getDelayMillis(3);
+            assertTrue(delay >= backoff / 2 && delay <= backoff);
+            delays.add(delay);
+        }
+        assertTrue("Error: only " + delays.size() + " distinct retry times for 100 devices",
+                delays.size() > 90);
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks how the periodic sync's period adapts, and replays a week of synthetic forecast
+    revisions against it and against the old fixed period, reporting how many requests each
+    made.  The clock is the test's, so a week passes in no time.
+ */
+public class TestSyncScheduler extends AndroidTestCase {
+    public static final String LOG_TAG = TestSyncScheduler.class.getSimpleName();
+
+    private static final String PREFS_NAME = "test_sync_scheduler";
+    private static final long START_MILLIS = 1450000000000L;
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    private static final long WEEK_MILLIS = 7 * DAY_MILLIS;
+    private static final int FORECAST_DAYS = 14;
+
+    // The server revises the forecast every six hours, and every hour through a day-long storm
+    private static final long SETTLED_REVISION_MILLIS = 6 * HOUR_MILLIS;
+    private static final long STORMY_REVISION_MILLIS = HOUR_MILLIS;
+    private static final long STORM_START_MILLIS = 3 * DAY_MILLIS;
+    private static final long STORM_END_MILLIS = 4 * DAY_MILLIS;
+    // The weekend, when the app isn't opened
+    private static final long WEEKEND_START_MILLIS = 5 * DAY_MILLIS;
+
+    private SharedPreferences mPrefs;
+    private long mNowMillis = START_MILLIS;
+
+    private final SyncRetryPolicy.Clock mClock = new SyncRetryPolicy.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return mNowMillis;
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    private SyncScheduler createScheduler() {
+        return new SyncScheduler(mPrefs, "interval", "scheduled", "opened", mClock);
+    }
+
+    private static SyncResult syncResult(int changed, int downloaded) {
+        SyncResult result = new SyncResult();
+        result.stats.numUpdates = changed;
+        result.stats.numEntries = downloaded;
+        return result;
+    }
+
+    public void testUnchangedSyncsLengthenThePeriodUpToTheCap() {
+        SyncScheduler scheduler = createScheduler();
+        assertEquals(SyncScheduler.DEFAULT_INTERVAL, scheduler.getIntervalSeconds(0));
+        int last = SyncScheduler.DEFAULT_INTERVAL;
+        for (int i = 0; i < 10; i++) {
+            scheduler.onSyncFinished(syncResult(0, 0));
+            int interval = scheduler.getIntervalSeconds(0);
+            assertTrue("Error: the period shrank after a sync that changed nothing",
+                    interval >= last);
+            last = interval;
+        }
+        assertEquals(SyncScheduler.MAX_INTERVAL, last);
+    }
+
+    public void testVolatileSyncDropsToTheFloor() {
+        SyncScheduler scheduler = createScheduler();
+        scheduler.onSyncFinished(syncResult(0, 0));
+        scheduler.onSyncFinished(syncResult(0, 0));
+        scheduler.onSyncFinished(syncResult(10, 14));
+        assertEquals(SyncScheduler.MIN_INTERVAL, scheduler.getIntervalSeconds(0));
+    }
+
+    public void testOrdinaryChangeHoldsThePeriod() {
+        SyncScheduler scheduler = createScheduler();
+        scheduler.onSyncFinished(syncResult(0, 0));
+        int interval = scheduler.getIntervalSeconds(0);
+        scheduler.onSyncFinished(syncResult(2, 14));
+        assertEquals(interval, scheduler.getIntervalSeconds(0));
+    }
+
+    public void testFailedSyncLeavesThePeriodAlone() {
+        SyncScheduler scheduler = createScheduler();
+        SyncResult failed = syncResult(0, 0);
+        failed.stats.numIoExceptions = 1;
+        scheduler.onSyncFinished(failed);
+        assertEquals("Error: a failed sync was taken as one that changed nothing",
+                SyncScheduler.DEFAULT_INTERVAL, scheduler.getIntervalSeconds(0));
+    }
+
+    public void testOpeningTheAppShortensThePeriodForAWhile() {
+        SyncScheduler scheduler = createScheduler();
+        scheduler.onAppOpened();
+        assertEquals(SyncScheduler.RECENTLY_OPENED_INTERVAL, scheduler.getIntervalSeconds(0));
+
+        mNowMillis += SyncScheduler.RECENTLY_OPENED_MILLIS;
+        assertEquals(SyncScheduler.DEFAULT_INTERVAL, scheduler.getIntervalSeconds(0));
+    }
+
+    public void testConstraintsOutweighEverythingElse() {
+        SyncScheduler scheduler = createScheduler();
+        scheduler.onSyncFinished(syncResult(14, 14));
+        scheduler.onAppOpened();
+        assertEquals(SyncScheduler.DEFAULT_INTERVAL,
+                scheduler.getIntervalSeconds(SyncScheduler.CONSTRAINT_METERED));
+        assertEquals(SyncScheduler.LOW_BATTERY_INTERVAL,
+                scheduler.getIntervalSeconds(SyncScheduler.CONSTRAINT_LOW_BATTERY));
+        assertEquals(SyncScheduler.LOW_BATTERY_INTERVAL, scheduler.getIntervalSeconds(
+                SyncScheduler.CONSTRAINT_METERED | SyncScheduler.CONSTRAINT_LOW_BATTERY));
+    }
+
+    public void testOnlyChangedPeriodIsRescheduled() {
+        SyncScheduler scheduler = createScheduler();
+        assertTrue(scheduler.setScheduled(SyncScheduler.DEFAULT_INTERVAL));
+        assertFalse("Error: rescheduled at the same period",
+                scheduler.setScheduled(SyncScheduler.DEFAULT_INTERVAL));
+        assertTrue(scheduler.setScheduled(SyncScheduler.MIN_INTERVAL));
+    }
+
+    /**
+     * A forecast the server hands out from mTime on, as each day's high.
+     */
+    private static class Revision {
+        final long mTime;
+        final int[] mHighs;
+
+        Revision(long time, int[] highs) {
+            mTime = time;
+            mHighs = highs;
+        }
+    }
+
+    private static List<Revision> buildRevisions() {
+        List<Revision> revisions = new ArrayList<Revision>();
+        int[] highs = new int[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            highs[i] = 20 + i % 5;
+        }
+        long time = 0;
+        while (time < WEEK_MILLIS) {
+            boolean stormy = time >= STORM_START_MILLIS && time < STORM_END_MILLIS;
+            highs = highs.clone();
+            // A settled revision only refines the far end of the forecast, a stormy one
+            // rewrites most of it
+            int first = stormy ? 0 : FORECAST_DAYS - 2;
+            int last = stormy ? 10 : FORECAST_DAYS;
+            for (int i = first; i < last; i++) {
+                highs[i]++;
+            }
+            revisions.add(new Revision(time, highs));
+            time += stormy ? STORMY_REVISION_MILLIS : SETTLED_REVISION_MILLIS;
+        }
+        return revisions;
+    }
+
+    private static int revisionAt(List<Revision> revisions, long time) {
+        int current = 0;
+        while (current + 1 < revisions.size() && revisions.get(current + 1).mTime <= time) {
+            current++;
+        }
+        return current;
+    }
+
+    /**
+     * @return the times, from the start of the week, at which the device synced
+     */
+    private List<Long> replayWeek(List<Revision> revisions, long[] opens, boolean adaptive) {
+        SyncScheduler scheduler = createScheduler();
+        List<Long> syncTimes = new ArrayList<Long>();
+        // The device starts out holding the first revision
+        int synced = 0;
+        int nextOpen = 0;
+        long time = 0;
+        while (time < WEEK_MILLIS) {
+            mNowMillis = START_MILLIS + time;
+            syncTimes.add(time);
+            // Diffed the way the upsert does; an unchanged revision is a 304 with no rows
+            int current = revisionAt(revisions, time);
+            SyncResult result = syncResult(0, 0);
+            if (current != synced) {
+                int[] stored = revisions.get(synced).mHighs;
+                int[] highs = revisions.get(current).mHighs;
+                result.stats.numEntries = FORECAST_DAYS;
+                for (int i = 0; i < FORECAST_DAYS; i++) {
+                    if (stored[i] != highs[i]) {
+                        result.stats.numUpdates++;
+                    }
+                }
+                synced = current;
+            }
+            scheduler.onSyncFinished(result);
+
+            long next = time + (adaptive ? scheduler.getIntervalSeconds(0) * 1000L
+                    : SyncScheduler.DEFAULT_INTERVAL * 1000L);
+            // Opening the app reschedules the sync, which the framework counts from the last
+            while (adaptive && nextOpen < opens.length && opens[nextOpen] < next) {
+                long opened = opens[nextOpen++];
+                if (opened > time) {
+                    mNowMillis = START_MILLIS + opened;
+                    scheduler.onAppOpened();
+                    next = Math.max(opened,
+                            Math.min(next, time + scheduler.getIntervalSeconds(0) * 1000L));
+                }
+            }
+            time = next;
+        }
+        return syncTimes;
+    }
+
+    private static int countFrom(List<Long> syncTimes, long from) {
+        int count = 0;
+        for (long time : syncTimes) {
+            if (time >= from) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long firstFrom(List<Long> syncTimes, long from) {
+        for (long time : syncTimes) {
+            if (time >= from) {
+                return time;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void testReplayedWeek() {
+        List<Revision> revisions = buildRevisions();
+        // Opened every weekday morning
+        long[] opens = new long[5];
+        for (int day = 0; day < opens.length; day++) {
+            opens[day] = day * DAY_MILLIS + 8 * HOUR_MILLIS;
+        }
+
+        List<Long> fixed = replayWeek(revisions, opens, false);
+        mPrefs.edit().clear().commit();
+        List<Long> adaptive = replayWeek(revisions, opens, true);
+
+        long stormNoticed = firstFrom(adaptive, STORM_START_MILLIS);
+        Log.i(LOG_TAG, revisions.size() + " revisions in a week: adaptive period made "
+                + adaptive.size() + " requests, " + countFrom(adaptive, WEEKEND_START_MILLIS)
+                + " at the weekend; fixed period made " + fixed.size() + ", "
+                + countFrom(fixed, WEEKEND_START_MILLIS) + " at the weekend; storm noticed after "
+                + (stormNoticed - STORM_START_MILLIS) / 60000 + " minutes");
+
+        assertTrue("Error: adapting made " + adaptive.size() + " requests, the fixed period "
+                + fixed.size(), adaptive.size() < fixed.size());
+        assertTrue("Error: the quiet weekend wasn't synced less often",
+                countFrom(adaptive, WEEKEND_START_MILLIS) < countFrom(fixed, WEEKEND_START_MILLIS));
+
+        // Once the storm has been noticed, each of its revisions arrives within the floor
+        for (Revision revision : revisions) {
+            if (revision.mTime > stormNoticed && revision.mTime < STORM_END_MILLIS) {
+                long lag = firstFrom(adaptive, revision.mTime) - revision.mTime;
+                assertTrue("Error: a stormy revision waited " + lag / 60000 + " minutes",
+                        lag <= SyncScheduler.MIN_INTERVAL * 1000L);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.WearForecast;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+    Checks the forecast sent to the wearable: that it round trips through its payload, that
+    it holds every day from today on, and that payloads it can't read are turned away.
+ */
+public class TestWearForecast extends AndroidTestCase {
+
+    private static final int DAYS = 14;
+
+    private static ForecastSnapshot createSnapshot(long firstDay) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = new ContentValues();
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    firstDay + i * DateUtils.DAY_IN_MILLIS);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20.25 + i);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, -5.5 - i);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        }
+        return ForecastSnapshot.fromValues("99705", values);
+    }
+
+    private static int julianDay(long millis) {
+        Time time = new Time();
+        time.set(millis);
+        return Time.getJulianDay(millis, time.gmtoff);
+    }
+
+    public void testWholeForecastFromTodayOn() {
+        long now = System.currentTimeMillis();
+        long yesterday = WeatherContract.normalizeDate(now - DateUtils.DAY_IN_MILLIS);
+        WearForecast forecast = SunshineSyncAdapter.toWearForecast(createSnapshot(yesterday),
+                now, false);
+
+        assertEquals("Error: yesterday shouldn't be sent", DAYS - 1, forecast.getDayCount());
+        int today = julianDay(now);
+        assertEquals(0, forecast.indexOf(today));
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            assertEquals("Error: the days aren't consecutive", today + i,
+                    forecast.getJulianDay(i));
+        }
+        assertTrue("Error: the watch can't show tomorrow", forecast.indexOf(today + 1) > 0);
+        assertTrue(forecast.indexOf(today - 1) < 0);
+        assertFalse(forecast.isMetric());
+    }
+
+    public void testPayloadRoundTrips() throws IOException {
+        long now = System.currentTimeMillis();
+        WearForecast forecast = SunshineSyncAdapter.toWearForecast(
+                createSnapshot(WeatherContract.normalizeDate(now)), now, true);
+        byte[] payload = forecast.encode();
+        assertEquals(WearForecast.VERSION, payload[0]);
+        assertTrue("Error: the payload isn't compact, " + payload.length + " bytes",
+                payload.length <= 4 + 10 * DAYS);
+
+        WearForecast decoded = WearForecast.decode(payload);
+        assertTrue(decoded.isMetric());
+        assertEquals(DAYS, decoded.getDayCount());
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals(forecast.getJulianDay(i), decoded.getJulianDay(i));
+            assertEquals(800 + i % 5, decoded.getWeatherId(i));
+            assertEquals(20.3 + i, decoded.getMaxTemp(i), 0.001);
+            assertEquals(-5.5 - i, decoded.getMinTemp(i), 0.001);
+        }
+        assertTrue("Error: the same forecast should make the same payload",
+                Arrays.equals(payload, decoded.encode()));
+    }
+
+    public void testUnreadablePayloadsAreRejected() {
+        byte[] payload = new WearForecast(true, new int[]{2457600, 2457601},
+                new int[]{800, 801}, new double[]{20, 21}, new double[]{10, 11}).encode();
+
+        byte[] newerVersion = payload.clone();
+        newerVersion[0] = WearForecast.VERSION + 1;
+        try {
+            WearForecast.decode(newerVersion);
+            fail("Error: a payload from a newer version was read");
+        } catch (IOException expected) {
+        }
+
+        try {
+            WearForecast.decode(Arrays.copyOf(payload, payload.length - 1));
+            fail("Error: a payload that was cut short was read");
+        } catch (IOException expected) {
+        }
+    }
+}
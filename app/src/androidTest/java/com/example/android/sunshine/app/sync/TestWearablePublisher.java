@@ -0,0 +1,144 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that the wearable publisher connects only when there's something to send, batches
+    items published while it's busy, skips items that haven't changed, and stops trying on a
+    device without the wearable API.
+ */
+public class TestWearablePublisher extends AndroidTestCase {
+
+    private static final String PATH = "/weather";
+
+    /*
+        Stands in for the Data API, recording what it was asked to do.
+     */
+    static class FakeDataSink implements WearablePublisher.DataSink {
+        final List<DataMap> mPuts = new ArrayList<DataMap>();
+        int mConnects;
+        int mDisconnects;
+        int mConnectResult = CONNECTED;
+        // When set, the first connect waits for it
+        CountDownLatch mConnectGate;
+        final CountDownLatch mConnecting = new CountDownLatch(1);
+
+        @Override
+        public synchronized int connect(long timeoutMillis) {
+            mConnects++;
+            mConnecting.countDown();
+            CountDownLatch gate = mConnectGate;
+            mConnectGate = null;
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return mConnectResult;
+        }
+
+        @Override
+        public synchronized boolean putDataItem(String path, DataMap dataMap, long timeoutMillis) {
+            mPuts.add(dataMap);
+            return true;
+        }
+
+        @Override
+        public synchronized void disconnect() {
+            mDisconnects++;
+            notifyAll();
+        }
+
+        // Waits for the publisher's worker to have drained its queue that many times
+        synchronized void awaitDisconnects(int disconnects) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (mDisconnects < disconnects && System.currentTimeMillis() < deadline) {
+                wait(deadline - System.currentTimeMillis());
+            }
+            assertTrue("Error: the publisher didn't finish sending", mDisconnects >= disconnects);
+        }
+    }
+
+    private static DataMap weather(String high, String low) {
+        DataMap dataMap = new DataMap();
+        dataMap.putString("high", high);
+        dataMap.putString("low", low);
+        return dataMap;
+    }
+
+    public void testNoConnectionUntilPublished() {
+        FakeDataSink sink = new FakeDataSink();
+        new WearablePublisher(sink);
+        assertEquals("Error: the publisher connected before it had anything to send",
+                0, sink.mConnects);
+    }
+
+    public void testRapidUpdatesAreBatched() throws InterruptedException {
+        FakeDataSink sink = new FakeDataSink();
+        CountDownLatch gate = new CountDownLatch(1);
+        sink.mConnectGate = gate;
+        WearablePublisher publisher = new WearablePublisher(sink);
+
+        publisher.publish(PATH, weather("20", "10"));
+        // Hold the worker in its first connect while more items arrive
+        assertTrue(sink.mConnecting.await(5, TimeUnit.SECONDS));
+        publisher.publish(PATH, weather("21", "11"));
+        publisher.publish(PATH, weather("22", "12"));
+        publisher.publish(PATH, weather("23", "13"));
+        gate.countDown();
+        sink.awaitDisconnects(1);
+
+        synchronized (sink) {
+            assertEquals("Error: the items published while busy weren't batched",
+                    2, sink.mPuts.size());
+            assertEquals("20", sink.mPuts.get(0).getString("high"));
+            assertEquals("Error: the batch didn't send the latest item",
+                    "23", sink.mPuts.get(1).getString("high"));
+        }
+    }
+
+    public void testUnchangedItemIsSkipped() throws InterruptedException {
+        FakeDataSink sink = new FakeDataSink();
+        WearablePublisher publisher = new WearablePublisher(sink);
+
+        publisher.publish(PATH, weather("20", "10"));
+        sink.awaitDisconnects(1);
+        publisher.publish(PATH, weather("20", "10"));
+        sink.awaitDisconnects(2);
+        publisher.publish(PATH, weather("21", "10"));
+        sink.awaitDisconnects(3);
+
+        synchronized (sink) {
+            assertEquals("Error: an unchanged item was sent again", 2, sink.mPuts.size());
+            assertEquals("21", sink.mPuts.get(1).getString("high"));
+            assertEquals("Error: the publisher connected for an unchanged item",
+                    2, sink.mConnects);
+        }
+    }
+
+    public void testUnavailableApiIsNotRetried() throws InterruptedException {
+        FakeDataSink sink = new FakeDataSink();
+        sink.mConnectResult = WearablePublisher.DataSink.UNAVAILABLE;
+        WearablePublisher publisher = new WearablePublisher(sink);
+
+        publisher.publish(PATH, weather("20", "10"));
+        sink.awaitDisconnects(1);
+        publisher.publish(PATH, weather("21", "11"));
+        sink.awaitDisconnects(2);
+
+        synchronized (sink) {
+            assertEquals(0, sink.mPuts.size());
+            assertEquals("Error: the publisher kept trying without the wearable API",
+                    1, sink.mConnects);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Checks that a row of the detail widget, art included, stays within what can be sent to the
+    host, and that art at its original size would not have.
+ */
+public class TestWidgetRows extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWidgetRows.class.getSimpleName();
+
+    // Art pack images are drawn for the largest screens
+    private static final int ORIGINAL_ART_SIZE = 512;
+    private static final int FORECAST_DAYS = 14;
+    // What a binder transaction can carry, shared by everything in flight in the process
+    private static final int BINDER_TRANSACTION_BYTES = 1024 * 1024;
+
+    private static int parcelSize(RemoteViews views) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            views.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @return the bytes a row costs the host: the row itself, plus the art's pixels.  The
+     * pixels are counted rather than parcelled, since from Marshmallow a large bitmap goes
+     * over as an ashmem blob and barely shows in the parcel's size, but still has to be
+     * mapped by the host.
+     */
+    private int rowSize(Bitmap art) {
+        int rowBytes = parcelSize(buildRow(null));
+        return art == null ? rowBytes : rowBytes + art.getRowBytes() * art.getHeight();
+    }
+
+    private RemoteViews buildRow(Bitmap art) {
+        long date = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate("99705", date);
+        return DetailWidgetRemoteViewsService.buildRow(mContext, 800, art, "Clear", date,
+                21.5, 8.25, weatherUri);
+    }
+
+    public void testIconSizeIsTheLayoutsIcon() {
+        int listIcon = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        assertEquals(listIcon, DetailWidgetRemoteViewsService.getIconSize(mContext,
+                AppWidgetManager.INVALID_APPWIDGET_ID));
+    }
+
+    public void testRowParcelSizeWithinBudget() {
+        int iconSize = DetailWidgetRemoteViewsService.getIconSize(mContext,
+                AppWidgetManager.INVALID_APPWIDGET_ID);
+        Bitmap art = Bitmap.createBitmap(iconSize, iconSize, Bitmap.Config.ARGB_8888);
+        Bitmap original = Bitmap.createBitmap(ORIGINAL_ART_SIZE, ORIGINAL_ART_SIZE,
+                Bitmap.Config.ARGB_8888);
+        try {
+            int iconRowBytes = rowSize(null);
+            int artRowBytes = rowSize(art);
+            int originalRowBytes = rowSize(original);
+            Log.i(LOG_TAG, "Row sizes: app icon " + iconRowBytes + " bytes, "
+                    + iconSize + "px art " + artRowBytes + " bytes, "
+                    + ORIGINAL_ART_SIZE + "px art " + originalRowBytes + " bytes");
+
+            assertTrue("Error: a row with " + iconSize + "px art takes " + artRowBytes
+                            + " bytes, over the budget of "
+                            + DetailWidgetRemoteViewsService.ROW_PARCEL_BUDGET_BYTES,
+                    artRowBytes <= DetailWidgetRemoteViewsService.ROW_PARCEL_BUDGET_BYTES);
+            // Only what's written inline goes through the transaction buffer
+            assertTrue("Error: a forecast's worth of rows wouldn't fit in one transaction",
+                    parcelSize(buildRow(art)) * FORECAST_DAYS < BINDER_TRANSACTION_BYTES);
+            assertTrue("Error: rows with the app's icon should be small",
+                    iconRowBytes < artRowBytes);
+            assertTrue("Error: art at its original size should be over the budget",
+                    originalRowBytes > DetailWidgetRemoteViewsService.ROW_PARCEL_BUDGET_BYTES);
+        } finally {
+            art.recycle();
+            original.recycle();
+        }
+    }
+}
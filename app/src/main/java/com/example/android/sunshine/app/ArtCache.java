@@ -0,0 +1,217 @@
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Weather art from the chosen art pack, decoded at the sizes the app shows it at and kept in
+ * a bounded memory cache.  Nothing is cached while the app's own graphics are in use.
+ */
+public class ArtCache {
+    private static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    // The sizes art is shown at
+    public static final int SIZE_LIST = 0;          // list rows and the detail widget's rows
+    public static final int SIZE_TODAY = 1;         // the today row and the detail pane
+    public static final int SIZE_NOTIFICATION = 2;  // the notification's large icon
+    private static final int SIZE_COUNT = 3;
+
+    // At most this much of the heap, and never more than the cap
+    private static final int MEMORY_CACHE_FRACTION = 16;
+    private static final int MAX_MEMORY_CACHE_BYTES = 8 * 1024 * 1024;
+
+    // How long a caller on a background thread waits for one image
+    private static final long LOAD_TIMEOUT_SECONDS = 15;
+
+    private static ArtCache sInstance;
+
+    private final Context mContext;
+    private final int[] mWidths = new int[SIZE_COUNT];
+    private final int[] mHeights = new int[SIZE_COUNT];
+    private final LruCache<String, Bitmap> mBitmaps;
+
+    @SuppressLint("InlinedApi")
+    ArtCache(Context context) {
+        mContext = context.getApplicationContext();
+        Resources resources = mContext.getResources();
+        mWidths[SIZE_LIST] = mHeights[SIZE_LIST] =
+                resources.getDimensionPixelSize(R.dimen.list_icon);
+        mWidths[SIZE_TODAY] = mHeights[SIZE_TODAY] =
+                resources.getDimensionPixelSize(R.dimen.today_icon);
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        boolean honeycomb = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+        mWidths[SIZE_NOTIFICATION] = honeycomb
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        mHeights[SIZE_NOTIFICATION] = honeycomb
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+        ActivityManager activityManager =
+                (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxBytes = Math.min(MAX_MEMORY_CACHE_BYTES,
+                activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_FRACTION);
+        mBitmaps = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    public static synchronized ArtCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtCache(context);
+        }
+        return sInstance;
+    }
+
+    public int getWidth(int size) {
+        return mWidths[size];
+    }
+
+    public int getHeight(int size) {
+        return mHeights[size];
+    }
+
+    // The url decides the pack, so switching packs never serves the old art
+    private String getKey(String artUrl, int size) {
+        return getKey(artUrl, mWidths[size], mHeights[size]);
+    }
+
+    private static String getKey(String artUrl, int width, int height) {
+        return artUrl + '@' + width + 'x' + height;
+    }
+
+    /**
+     * @return the cached art for the condition at the size, or null if it isn't in memory or
+     * the app's own graphics are in use.  Never waits.
+     */
+    public Bitmap peek(int weatherId, int size) {
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        if (settings.mUsingLocalGraphics) {
+            return null;
+        }
+        return mBitmaps.get(getKey(
+                settings.getArtUrl(WeatherConditions.getCondition(weatherId)), size));
+    }
+
+    /**
+     * Returns the art for the condition at the size, loading it if it isn't cached.  Must not
+     * be called on the main thread.
+     *
+     * @return the art, or null if the app's own graphics are in use or it couldn't be loaded
+     */
+    public Bitmap get(int weatherId, int size) {
+        return get(weatherId, mWidths[size], mHeights[size]);
+    }
+
+    /**
+     * Like {@link #get(int, int)}, for art shown in a box of some other size, decoded to fit
+     * inside it.
+     */
+    public Bitmap get(int weatherId, int width, int height) {
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        if (settings.mUsingLocalGraphics) {
+            return null;
+        }
+        String artUrl = settings.getArtUrl(WeatherConditions.getCondition(weatherId));
+        if (artUrl == null) {
+            return null;
+        }
+        String key = getKey(artUrl, width, height);
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        try {
+            bitmap = Glide.with(mContext)
+                    .load(artUrl)
+                    .asBitmap()
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .fitCenter()
+                    .into(width, height)
+                    .get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // Leave the flag for the caller, which is being told to stop
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+            return null;
+        }
+        mBitmaps.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Loads the art a forecast will show: every condition at list size, and the first day's
+     * at the sizes the today row and the notification use.  Must not be called on the main
+     * thread.
+     *
+     * @param weatherIds the forecast's weather ids, first day first
+     */
+    public void prefetch(int[] weatherIds) {
+        if (weatherIds.length == 0 || SettingsSnapshot.get(mContext).mUsingLocalGraphics) {
+            return;
+        }
+        boolean[] seen = new boolean[WeatherConditions.CONDITION_COUNT];
+        for (int weatherId : weatherIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            int condition = WeatherConditions.getCondition(weatherId);
+            if (!seen[condition]) {
+                seen[condition] = true;
+                get(weatherId, SIZE_LIST);
+            }
+        }
+        get(weatherIds[0], SIZE_TODAY);
+        get(weatherIds[0], SIZE_NOTIFICATION);
+    }
+
+    /**
+     * Shows the art for the condition in the view: the cached bitmap if there is one, the art
+     * pack's image through Glide if there isn't, or the resource when the app's own graphics
+     * are in use or the image can't be loaded.
+     */
+    public void into(ImageView view, int weatherId, int size, int defaultResource) {
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        if (settings.mUsingLocalGraphics) {
+            Glide.clear(view);
+            view.setImageResource(defaultResource);
+            return;
+        }
+        String artUrl = settings.getArtUrl(WeatherConditions.getCondition(weatherId));
+        Bitmap bitmap = artUrl == null ? null : mBitmaps.get(getKey(artUrl, size));
+        if (bitmap != null) {
+            // A load started for whatever the view showed before mustn't land on top of this
+            Glide.clear(view);
+            view.setImageBitmap(bitmap);
+        } else {
+            Glide.with(view.getContext())
+                    .load(artUrl)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .override(mWidths[size], mHeights[size])
+                    .error(defaultResource)
+                    .crossFade()
+                    .into(view);
+        }
+    }
+}
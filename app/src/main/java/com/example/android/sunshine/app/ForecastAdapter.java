@@ -16,7 +16,6 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -29,12 +28,11 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import java.util.List;
 
 /**
- * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * {@link ForecastAdapter} exposes a list of weather forecasts, loaded as {@link ForecastRow}s,
+ * to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -44,11 +42,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private List<ForecastRow> mRows;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private ArtCache mArtCache;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +72,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows.get(adapterPosition).mDate, this);
             mICM.onClick(this);
         }
     }
@@ -90,6 +87,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mArtCache = ArtCache.getInstance(context);
+        // Rows are identified by their date, so selections can follow them as days come and go
+        setHasStableIds(true);
     }
 
     /*
@@ -124,63 +124,33 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
-        }
+        // Everything was formatted when the rows were loaded, so this only copies it across
+        ForecastRow row = mRows.get(position);
+        boolean today = getItemViewType(position) == VIEW_TYPE_TODAY;
+        int defaultImage = today ? row.mArtResource : row.mIconResource;
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
-        } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
-                    .into(forecastAdapterViewHolder.mIconView);
-        }
+        // The art the last sync prefetched is set straight from memory
+        mArtCache.into(forecastAdapterViewHolder.mIconView, row.mWeatherId,
+                today ? ArtCache.SIZE_TODAY : ArtCache.SIZE_LIST, defaultImage);
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.mTransitionName);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(today ? row.mLongDay : row.mDay);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.mDescription);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.mDescriptionContentDescription);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.mHigh);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.mHighContentDescription);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.mLow);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.mLowContentDescription);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -208,18 +178,96 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mRows ) return 0;
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).mDate;
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    /**
+     * Replaces every row, rebinding them all.
+     */
+    public void swapRows(List<ForecastRow> newRows) {
+        mRows = newRows;
+        if (null != newRows) {
+            // Until there are rows again the selections stay where they were
+            mICM.remapCheckedPositions(new ItemChoiceManager.PositionMapper() {
+                @Override
+                public int getNewPosition(int oldPosition, long id) {
+                    if (id == RecyclerView.NO_ID) {
+                        return oldPosition < getItemCount() ? oldPosition : RecyclerView.NO_POSITION;
+                    }
+                    return findPosition(id);
+                }
+            });
+        }
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    /**
+     * Moves to the diff's new rows, telling the list about only the rows that changed.  Falls
+     * back to rebinding everything when the diff wasn't made against the rows shown now.
+     *
+     * @return true if only the changed rows were updated
+     */
+    public boolean applyDiff(final ForecastDiff diff) {
+        List<ForecastRow> oldRows = mRows;
+        if (diff.mNewRows == oldRows) {
+            // Delivered again, say when the list is started again
+            return true;
+        }
+        if (diff.mOldRows == null || diff.mOldRows != oldRows) {
+            swapRows(diff.mNewRows);
+            return false;
+        }
+
+        mRows = diff.mNewRows;
+        mICM.remapCheckedPositions(new ItemChoiceManager.PositionMapper() {
+            @Override
+            public int getNewPosition(int oldPosition, long id) {
+                return diff.getNewPosition(oldPosition);
+            }
+        });
+        diff.dispatchTo(this);
+
+        // The first row has its own layout, so a row that moves into or out of that spot has
+        // to be laid out again even though its contents are the same
+        if (mUseTodayLayout && !oldRows.isEmpty() && !mRows.isEmpty()
+                && oldRows.get(0).mDate != mRows.get(0).mDate) {
+            notifyItemChanged(0);
+            int oldFirst = diff.getNewPosition(0);
+            if (oldFirst != RecyclerView.NO_POSITION) {
+                notifyItemChanged(oldFirst);
+            }
+        }
+        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        return true;
+    }
+
+    // The rows are in date order
+    private int findPosition(long date) {
+        int low = 0;
+        int high = getItemCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midDate = mRows.get(mid).mDate;
+            if (midDate < date) {
+                low = mid + 1;
+            } else if (midDate > date) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    public List<ForecastRow> getRows() {
+        return mRows;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
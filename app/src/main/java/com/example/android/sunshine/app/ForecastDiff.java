@@ -0,0 +1,151 @@
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The changes that turn one list of forecast rows into the next, worked out on the loader's
+ * thread so the list can animate just the rows that changed instead of rebinding them all.
+ * <p/>
+ * Rows are matched by date.  Both lists are sorted by date and hold each date once, so a
+ * single merge over the two finds every removed, inserted and changed row; nothing can move.
+ */
+public class ForecastDiff {
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_CHANGE = 2;
+
+    // Null when there was nothing before, in which case the whole list is new
+    public final List<ForecastRow> mOldRows;
+    public final List<ForecastRow> mNewRows;
+
+    // Each operation is (type, position, count), positions as they are when it's dispatched
+    private final int[] mOps;
+    private final int mOpCount;
+    // New position of each old row, or RecyclerView.NO_POSITION if it was removed
+    private final int[] mNewPositions;
+
+    private ForecastDiff(List<ForecastRow> oldRows, List<ForecastRow> newRows, int[] ops,
+                         int opCount, int[] newPositions) {
+        mOldRows = oldRows;
+        mNewRows = newRows;
+        mOps = ops;
+        mOpCount = opCount;
+        mNewPositions = newPositions;
+    }
+
+    /**
+     * @param oldRows the rows the list is showing, or null if it hasn't shown any yet
+     */
+    static ForecastDiff compute(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+        if (oldRows == null) {
+            return new ForecastDiff(null, newRows, new int[0], 0, new int[0]);
+        }
+        int oldCount = oldRows.size();
+        int newCount = newRows.size();
+        // At worst every row is its own operation
+        int[] ops = new int[3 * (oldCount + newCount)];
+        int opCount = 0;
+        int[] newPositions = new int[oldCount];
+
+        int oldIndex = 0;
+        int newIndex = 0;
+        // Position in the list as it stands after the operations so far
+        int position = 0;
+        while (oldIndex < oldCount || newIndex < newCount) {
+            int op;
+            if (newIndex >= newCount || (oldIndex < oldCount
+                    && oldRows.get(oldIndex).mDate < newRows.get(newIndex).mDate)) {
+                op = OP_REMOVE;
+                newPositions[oldIndex++] = RecyclerView.NO_POSITION;
+            } else if (oldIndex >= oldCount
+                    || newRows.get(newIndex).mDate < oldRows.get(oldIndex).mDate) {
+                op = OP_INSERT;
+                newIndex++;
+            } else {
+                newPositions[oldIndex] = newIndex;
+                op = oldRows.get(oldIndex++).hasSameContents(newRows.get(newIndex++))
+                        ? -1 : OP_CHANGE;
+            }
+
+            if (op >= 0) {
+                // Runs of the same operation go out as one range
+                int last = opCount - 3;
+                if (opCount > 0 && mergeable(ops, last, op, position)) {
+                    ops[last + 2]++;
+                } else {
+                    ops[opCount++] = op;
+                    ops[opCount++] = position;
+                    ops[opCount++] = 1;
+                }
+            }
+            // A removed row leaves the next one at the same position
+            if (op != OP_REMOVE) {
+                position++;
+            }
+        }
+        return new ForecastDiff(oldRows, newRows, ops, opCount, newPositions);
+    }
+
+    private static boolean mergeable(int[] ops, int last, int op, int position) {
+        if (ops[last] != op) {
+            return false;
+        }
+        if (op == OP_REMOVE) {
+            return ops[last + 1] == position;
+        }
+        return ops[last + 1] + ops[last + 2] == position;
+    }
+
+    /**
+     * @return true if the lists have the same rows with the same contents.
+     */
+    public boolean isEmpty() {
+        return mOldRows != null && mOpCount == 0;
+    }
+
+    /**
+     * @return where the row at oldPosition is now, or RecyclerView.NO_POSITION if it's gone.
+     */
+    public int getNewPosition(int oldPosition) {
+        if (oldPosition < 0 || oldPosition >= mNewPositions.length) {
+            return RecyclerView.NO_POSITION;
+        }
+        return mNewPositions[oldPosition];
+    }
+
+    /**
+     * Tells the adapter about each range of rows that was removed, inserted or changed.  The
+     * adapter must already be returning the new rows.
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOpCount; i += 3) {
+            int position = mOps[i + 1];
+            int count = mOps[i + 2];
+            switch (mOps[i]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder ops = new StringBuilder();
+        for (int i = 0; i < mOpCount; i += 3) {
+            ops.append(i == 0 ? "" : ", ")
+                    .append(mOps[i] == OP_REMOVE ? "remove " : mOps[i] == OP_INSERT ? "insert " : "change ")
+                    .append(mOps[i + 1]).append('+').append(mOps[i + 2]);
+        }
+        return "[" + ops + "] " + Arrays.toString(mNewPositions);
+    }
+}
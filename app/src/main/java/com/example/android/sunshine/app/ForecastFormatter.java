@@ -0,0 +1,220 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.v4.util.LongSparseArray;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats temperatures and days for display, keeping what it has produced so binding the same
+ * days again doesn't allocate.  Synchronized, since the sync adapter and widgets use it too.
+ */
+public class ForecastFormatter {
+
+    // Temperatures seen per unit before the memo starts over; a forecast only has a few dozen
+    private static final int MAX_MEMOIZED_TEMPERATURES = 256;
+
+    private static final long HOUR_IN_MILLIS = 1000L * 60 * 60;
+    private static final long DAY_IN_MILLIS = HOUR_IN_MILLIS * 24;
+
+    private static ForecastFormatter sInstance;
+
+    private final Context mContext;
+
+    // Everything below depends on the locale the resources were read in
+    private Locale mLocale;
+    private String mTemperatureFormat;
+    private String mFullFriendlyDateFormat;
+    private String mToday;
+    private String mTomorrow;
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mShortDateFormat;
+    private SimpleDateFormat mMonthDayFormat;
+
+    // Indexed by 1 for metric and 0 for imperial, keyed by the raw bits of the stored temperature
+    @SuppressWarnings("unchecked")
+    private final LongSparseArray<String>[] mTemperatures = new LongSparseArray[]{
+            new LongSparseArray<String>(), new LongSparseArray<String>()
+    };
+
+    // The julian day that today currently is, and the offset it was worked out with
+    private int mCurrentJulianDay;
+    private long mGmtOffSeconds;
+    private long mCheckDayAgainMillis;
+
+    // Day strings, keyed by julian day; they change at midnight, so they're dropped then
+    private final LongSparseArray<String> mFriendlyDays = new LongSparseArray<String>();
+    private final LongSparseArray<String> mLongFriendlyDays = new LongSparseArray<String>();
+    private final LongSparseArray<String> mFullFriendlyDays = new LongSparseArray<String>();
+    private final LongSparseArray<String> mDayNames = new LongSparseArray<String>();
+    private final LongSparseArray<String> mMonthDays = new LongSparseArray<String>();
+
+    ForecastFormatter(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static synchronized ForecastFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastFormatter(context);
+        }
+        return sInstance;
+    }
+
+    public synchronized String formatTemperature(double temperature) {
+        checkLocale();
+        boolean isMetric = SettingsSnapshot.get(mContext).mIsMetric;
+        LongSparseArray<String> memo = mTemperatures[isMetric ? 1 : 0];
+        long key = Double.doubleToLongBits(temperature);
+        String formatted = memo.get(key);
+        if (formatted == null) {
+            // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+            // the values here.
+            if (!isMetric) {
+                temperature = (temperature * 1.8) + 32;
+            }
+            // For presentation, assume the user doesn't care about tenths of a degree.
+            formatted = String.format(mTemperatureFormat, temperature);
+            if (memo.size() >= MAX_MEMOIZED_TEMPERATURES) {
+                memo.clear();
+            }
+            memo.put(key, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        checkDay();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+        LongSparseArray<String> memo = displayLongToday ? mLongFriendlyDays : mFriendlyDays;
+        String day = memo.get(julianDay);
+        if (day == null) {
+            if (displayLongToday && julianDay == mCurrentJulianDay) {
+                day = String.format(mFullFriendlyDateFormat, mToday,
+                        getFormattedMonthDay(dateInMillis));
+            } else if (julianDay < mCurrentJulianDay + 7) {
+                day = getDayName(dateInMillis);
+            } else {
+                day = mShortDateFormat.format(dateInMillis);
+            }
+            memo.put(julianDay, day);
+        }
+        return day;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        checkDay();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+        String day = mFullFriendlyDays.get(julianDay);
+        if (day == null) {
+            day = String.format(mFullFriendlyDateFormat, getDayName(dateInMillis),
+                    getFormattedMonthDay(dateInMillis));
+            mFullFriendlyDays.put(julianDay, day);
+        }
+        return day;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        checkDay();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+        String name = mDayNames.get(julianDay);
+        if (name == null) {
+            if (julianDay == mCurrentJulianDay) {
+                name = mToday;
+            } else if (julianDay == mCurrentJulianDay + 1) {
+                name = mTomorrow;
+            } else {
+                name = mDayNameFormat.format(dateInMillis);
+            }
+            mDayNames.put(julianDay, name);
+        }
+        return name;
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        checkDay();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+        String monthDay = mMonthDays.get(julianDay);
+        if (monthDay == null) {
+            monthDay = mMonthDayFormat.format(dateInMillis);
+            mMonthDays.put(julianDay, monthDay);
+        }
+        return monthDay;
+    }
+
+    /**
+     * Drops whatever was formatted for another locale.  Comparing the default locale is cheap
+     * and, unlike a configuration callback, also catches the widgets' and sync's processes.
+     */
+    private void checkLocale() {
+        Locale locale = Locale.getDefault();
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        Resources res = mContext.getResources();
+        mTemperatureFormat = res.getString(R.string.format_temperature);
+        mFullFriendlyDateFormat = res.getString(R.string.format_full_friendly_date);
+        mToday = res.getString(R.string.today);
+        mTomorrow = res.getString(R.string.tomorrow);
+        mDayNameFormat = new SimpleDateFormat("EEEE", locale);
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+        mTemperatures[0].clear();
+        mTemperatures[1].clear();
+        clearDays();
+        mCheckDayAgainMillis = 0;
+    }
+
+    /**
+     * Works out which day today is, and the offset that turns dates into days, once an hour
+     * rather than on every call.  Re-checking hourly also picks up time zone and daylight
+     * saving changes.
+     */
+    private void checkDay() {
+        checkLocale();
+        long now = System.currentTimeMillis();
+        if (now < mCheckDayAgainMillis) {
+            return;
+        }
+        TimeZone timeZone = TimeZone.getDefault();
+        // The same offset Time.setToNow() would have produced
+        long gmtOffSeconds = timeZone.getOffset(now) / 1000;
+        int currentJulianDay = Time.getJulianDay(now, gmtOffSeconds);
+        if (gmtOffSeconds != mGmtOffSeconds || currentJulianDay != mCurrentJulianDay) {
+            mGmtOffSeconds = gmtOffSeconds;
+            mCurrentJulianDay = currentJulianDay;
+            mDayNameFormat.setTimeZone(timeZone);
+            mShortDateFormat.setTimeZone(timeZone);
+            mMonthDayFormat.setTimeZone(timeZone);
+            clearDays();
+        }
+        // Julian days start at local midnight, so never look past the next one
+        long localMillis = now + gmtOffSeconds * 1000;
+        long untilMidnight = DAY_IN_MILLIS - localMillis % DAY_IN_MILLIS;
+        mCheckDayAgainMillis = now + Math.min(untilMidnight, HOUR_IN_MILLIS);
+    }
+
+    private void clearDays() {
+        mFriendlyDays.clear();
+        mLongFriendlyDays.clear();
+        mFullFriendlyDays.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One day of the forecast list with everything the row shows already worked out: the strings
+ * formatted, the icon chosen and the content descriptions built.  The rows are made on the
+ * loader's thread, so binding one is only a matter of copying its fields into the views.
+ */
+public class ForecastRow {
+    public final long mDate;
+    public final int mWeatherId;
+    // Icon for the plain layout, artwork for the larger "today" layout
+    public final int mIconResource;
+    public final int mArtResource;
+    // Null when the local graphics are in use
+    public final String mArtUrl;
+    public final String mTransitionName;
+    // The day as the plain layout shows it, and as the "today" layout does
+    public final String mDay;
+    public final String mLongDay;
+    public final String mDescription;
+    public final String mDescriptionContentDescription;
+    public final String mHigh;
+    public final String mHighContentDescription;
+    public final String mLow;
+    public final String mLowContentDescription;
+    public final double mCoordLat;
+    public final double mCoordLong;
+
+    private ForecastRow(Context context, ForecastFormatter formatter, SettingsSnapshot settings,
+                        Cursor cursor) {
+        mDate = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        mWeatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        mIconResource = Utility.getIconResourceForWeatherCondition(mWeatherId);
+        mArtResource = Utility.getArtResourceForWeatherCondition(mWeatherId);
+        mArtUrl = settings.mUsingLocalGraphics
+                ? null : Utility.getArtUrlForWeatherCondition(context, mWeatherId);
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view.  Named for the day rather
+        // than the position, so a row keeps its name when the days before it go away
+        mTransitionName = "iconView" + mDate;
+
+        mDay = formatter.getFriendlyDayString(mDate, false);
+        mLongDay = formatter.getFriendlyDayString(mDate, true);
+
+        mDescription = Utility.getStringForWeatherCondition(context, mWeatherId);
+        mDescriptionContentDescription = context.getString(R.string.a11y_forecast, mDescription);
+
+        mHigh = formatter.formatTemperature(cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        mHighContentDescription = context.getString(R.string.a11y_high_temp, mHigh);
+        mLow = formatter.formatTemperature(cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        mLowContentDescription = context.getString(R.string.a11y_low_temp, mLow);
+
+        mCoordLat = cursor.getDouble(ForecastFragment.COL_COORD_LAT);
+        mCoordLong = cursor.getDouble(ForecastFragment.COL_COORD_LONG);
+    }
+
+    /**
+     * Reads every row of a cursor with ForecastFragment.FORECAST_COLUMNS.  The cursor is left
+     * open.
+     */
+    static List<ForecastRow> fromCursor(Context context, Cursor cursor) {
+        ForecastFormatter formatter = ForecastFormatter.getInstance(context);
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        List<ForecastRow> rows = new ArrayList<ForecastRow>(cursor.getCount());
+        for (int position = 0; cursor.moveToPosition(position); position++) {
+            rows.add(new ForecastRow(context, formatter, settings, cursor));
+        }
+        return rows;
+    }
+
+    /**
+     * @return true if the two rows would look the same in the list.
+     */
+    public boolean hasSameContents(ForecastRow other) {
+        return mDate == other.mDate
+                && mIconResource == other.mIconResource
+                && mArtResource == other.mArtResource
+                && equal(mArtUrl, other.mArtUrl)
+                && mDay.equals(other.mDay)
+                && mLongDay.equals(other.mLongDay)
+                && mDescription.equals(other.mDescription)
+                && mHigh.equals(other.mHigh)
+                && mLow.equals(other.mLow);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
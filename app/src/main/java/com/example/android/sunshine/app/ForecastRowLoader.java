@@ -0,0 +1,106 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the forecast for a location and turns it into {@link ForecastRow}s, all on a
+ * background thread.  Like a CursorLoader it loads again whenever the weather changes, but it
+ * closes its cursor straight away, so it watches the location's weather itself.
+ * <p/>
+ * Each result is a {@link ForecastDiff} from the rows it delivered last, so the list only has
+ * to update the days that changed.
+ */
+public class ForecastRowLoader extends AsyncTaskLoader<ForecastDiff> {
+
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final String mSortOrder;
+    private final Uri mObservedUri;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private boolean mObserving;
+
+    // The rows last delivered, which the next load is compared with
+    private volatile List<ForecastRow> mRows;
+    private ForecastDiff mResult;
+
+    public ForecastRowLoader(Context context, String locationSetting, long startDate,
+                             String[] projection, String sortOrder) {
+        super(context);
+        mUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, startDate);
+        mProjection = projection;
+        mSortOrder = sortOrder;
+        // Changes to any of the location's days, or to all the weather, are reported at or
+        // above this uri
+        mObservedUri = WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting);
+    }
+
+    @Override
+    public ForecastDiff loadInBackground() {
+        List<ForecastRow> previous = mRows;
+        List<ForecastRow> rows;
+        Cursor cursor = getContext().getContentResolver().query(
+                mUri, mProjection, null, null, mSortOrder);
+        if (cursor == null) {
+            rows = Collections.emptyList();
+        } else {
+            try {
+                rows = ForecastRow.fromCursor(getContext(), cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+        return ForecastDiff.compute(previous, rows);
+    }
+
+    @Override
+    public void deliverResult(ForecastDiff result) {
+        if (isReset()) {
+            return;
+        }
+        mResult = result;
+        mRows = result.mNewRows;
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(mObservedUri, true, mObserver);
+            mObserving = true;
+        }
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mRows = null;
+        mResult = null;
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+    }
+}
@@ -28,8 +28,8 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  The adapter
+ * tells it where the items went when its data changes, through remapCheckedPositions.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -37,14 +37,6 @@ public class ItemChoiceManager {
     private int mChoiceMode;
 
     private RecyclerView.Adapter mAdapter;
-    private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
-        @Override
-        public void onChanged() {
-            super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
-        }
-    };
 
     private ItemChoiceManager() {
     }
@@ -56,11 +48,16 @@ public class ItemChoiceManager {
     }
 
     /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
+     * Says where the adapter's items went when its data changed, so the checked ones can
+     * follow them.
      */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
+    public interface PositionMapper {
+        /**
+         * @param id the item's stable id, or RecyclerView.NO_ID if it isn't known
+         * @return the item's new position, or RecyclerView.NO_POSITION if it's gone
+         */
+        int getNewPosition(int oldPosition, long id);
+    }
 
     /**
      * Running state of which positions are currently checked
@@ -154,36 +151,37 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
-        // Clear out the positional check states, we'll rebuild it below from IDs.
-        mCheckStates.clear();
+    /**
+     * Moves the checked states to wherever the adapter says their items went, unchecking any
+     * that are gone.  Called after the adapter's data changes, before it rebinds.
+     */
+    void remapCheckedPositions(PositionMapper mapper) {
+        SparseBooleanArray oldCheckStates = mCheckStates;
+        mCheckStates = new SparseBooleanArray();
+
+        if (mCheckedIdStates.size() == 0) {
+            // Only positions were kept, as in multiple choice mode
+            for (int i = 0; i < oldCheckStates.size(); i++) {
+                if (oldCheckStates.valueAt(i)) {
+                    int position = mapper.getNewPosition(oldCheckStates.keyAt(i), RecyclerView.NO_ID);
+                    if (position != RecyclerView.NO_POSITION) {
+                        mCheckStates.put(position, true);
+                    }
+                }
+            }
+            return;
+        }
 
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
-
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+            final int position = mapper.getNewPosition(lastPos, id);
+            if (position == RecyclerView.NO_POSITION) {
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
+                mCheckStates.put(position, true);
             }
         }
     }
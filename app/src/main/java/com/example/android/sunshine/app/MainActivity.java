@@ -166,6 +166,7 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onResume() {
         super.onResume();
+        SunshineSyncAdapter.onAppOpened(this);
 
         String location = Utility.getPreferredLocation(this);
         // update the location in our second pane using the fragment manager
@@ -48,6 +48,7 @@ public class SettingsActivity extends PreferenceActivity
         // For all preferences, attach an OnPreferenceChangeListener so the UI summary can be
         // updated when the preference changes.
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_saved_locations_count_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
     }
@@ -124,6 +125,14 @@ public class SettingsActivity extends PreferenceActivity
     @Override
     public boolean onPreferenceChange(Preference preference, Object value) {
         setPreferenceSummary(preference, value);
+        if (preference.getKey().equals(getString(R.string.pref_location_key))) {
+            // keep the location being switched away from in the set the sync adapter refreshes,
+            // including the default one, which was never chosen and so never remembered
+            String location = Utility.getPreferredLocation(this);
+            if (!location.equals(value)) {
+                Utility.rememberLocation(this, location);
+            }
+        }
         return true;
     }
 
@@ -131,10 +140,14 @@ public class SettingsActivity extends PreferenceActivity
     // start our synchronization here
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // Make sure everything started from here sees the new value
+        SettingsSnapshot.refresh(this);
         if ( key.equals(getString(R.string.pref_location_key)) ) {
             // we've changed the location
             // first clear locationStatus
             Utility.resetLocationStatus(this);
+            // keep the new location in the set the sync adapter refreshes
+            Utility.rememberLocation(this, Utility.getPreferredLocation(this));
             SunshineSyncAdapter.syncImmediately(this);
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
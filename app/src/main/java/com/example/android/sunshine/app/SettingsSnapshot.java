@@ -0,0 +1,104 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Locale;
+
+/**
+ * An immutable copy of the display settings, replaced whenever one of them changes, so
+ * readers on any thread get them without going to SharedPreferences.
+ */
+public final class SettingsSnapshot {
+
+    private static final Object sLock = new Object();
+    private static volatile SettingsSnapshot sCurrent;
+
+    // Strongly held, since SharedPreferences only keeps a weak reference to its listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    public final String mLocation;
+    public final boolean mIsMetric;
+    public final boolean mUsingLocalGraphics;
+    // The art pack's url format, with a %s for the art name
+    public final String mArtPack;
+    // Art urls of the pack, indexed by WeatherConditions condition
+    private final String[] mArtUrls;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        mIsMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        mArtPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        mUsingLocalGraphics = mArtPack.equals(sunshineArtPack);
+
+        mArtUrls = new String[WeatherConditions.CONDITION_COUNT];
+        for (int condition = 1; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            mArtUrls[condition] = String.format(Locale.US, mArtPack,
+                    WeatherConditions.getArtName(condition));
+        }
+    }
+
+    /**
+     * @return the current settings.  The first call reads them and starts following changes.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (sLock) {
+            if (sCurrent == null) {
+                final Context appContext = context.getApplicationContext();
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                final String locationKey = appContext.getString(R.string.pref_location_key);
+                final String unitsKey = appContext.getString(R.string.pref_units_key);
+                final String artPackKey = appContext.getString(R.string.pref_art_pack_key);
+                sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                          String key) {
+                        if (locationKey.equals(key) || unitsKey.equals(key)
+                                || artPackKey.equals(key)) {
+                            refresh(appContext);
+                        }
+                    }
+                };
+                prefs.registerOnSharedPreferenceChangeListener(sListener);
+                sCurrent = new SettingsSnapshot(appContext, prefs);
+            }
+            return sCurrent;
+        }
+    }
+
+    /**
+     * Re-reads the settings now.  The listener does this on the main thread after a change is
+     * written; code that acts on its own change, or on one written from another thread, calls
+     * this first so that it doesn't see the old values.
+     */
+    public static SettingsSnapshot refresh(Context context) {
+        get(context);
+        synchronized (sLock) {
+            Context appContext = context.getApplicationContext();
+            sCurrent = new SettingsSnapshot(appContext,
+                    PreferenceManager.getDefaultSharedPreferences(appContext));
+            return sCurrent;
+        }
+    }
+
+    /**
+     * @return url of the art pack's artwork for the condition, or null for CONDITION_NONE.
+     */
+    public String getArtUrl(int condition) {
+        return mArtUrls[condition];
+    }
+}
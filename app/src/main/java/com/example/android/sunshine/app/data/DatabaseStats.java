@@ -0,0 +1,40 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+
+/**
+ * How much room weather.db takes up: its pages, the free ones among them, and the size of the
+ * files on disk, including the write-ahead log.
+ */
+public final class DatabaseStats {
+    public final long mPageSize;
+    public final long mPageCount;
+    public final long mFreePageCount;
+    public final long mFileBytes;
+
+    private DatabaseStats(long pageSize, long pageCount, long freePageCount, long fileBytes) {
+        mPageSize = pageSize;
+        mPageCount = pageCount;
+        mFreePageCount = freePageCount;
+        mFileBytes = fileBytes;
+    }
+
+    static DatabaseStats read(SQLiteDatabase db) {
+        File file = new File(db.getPath());
+        File wal = new File(db.getPath() + "-wal");
+        return new DatabaseStats(
+                DatabaseUtils.longForQuery(db, "PRAGMA page_size", null),
+                DatabaseUtils.longForQuery(db, "PRAGMA page_count", null),
+                DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null),
+                file.length() + wal.length());
+    }
+
+    @Override
+    public String toString() {
+        return mFileBytes + " bytes on disk, " + mPageCount + " pages of " + mPageSize
+                + " bytes, " + mFreePageCount + " free";
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.BaseColumns;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * An immutable copy of one location's forecast, held as parallel primitive arrays ordered by
+ * day.  Days are keyed by their normalized date, the same value the provider stores and the
+ * weather URIs carry, so a lookup here answers exactly what the equivalent query would.
+ */
+public final class ForecastSnapshot {
+    private final String mLocationSetting;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+    private final String[] mDescriptions;
+
+    private ForecastSnapshot(String locationSetting, int days) {
+        mLocationSetting = locationSetting;
+        mDates = new long[days];
+        mWeatherIds = new int[days];
+        mMaxTemps = new double[days];
+        mMinTemps = new double[days];
+        mDescriptions = new String[days];
+    }
+
+    /**
+     * Builds a snapshot from the weather values that were just stored for a location.  The
+     * values must be in date order, as the sync adapter produces them.
+     */
+    public static ForecastSnapshot fromValues(String locationSetting, ContentValues[] values) {
+        ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, values.length);
+        for (int i = 0; i < values.length; i++) {
+            ContentValues day = values[i];
+            snapshot.mDates[i] =
+                    WeatherContract.normalizeDate(day.getAsLong(WeatherEntry.COLUMN_DATE));
+            if (i > 0 && snapshot.mDates[i] <= snapshot.mDates[i - 1]) {
+                throw new IllegalArgumentException("Forecast days out of order for "
+                        + locationSetting);
+            }
+            snapshot.mWeatherIds[i] = day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            snapshot.mMaxTemps[i] = day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            snapshot.mMinTemps[i] = day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            snapshot.mDescriptions[i] = day.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Builds a snapshot from the rows of a date-ordered weather query, which must include the
+     * date, weather id, temperatures and description.  The cursor is left open.
+     */
+    public static ForecastSnapshot fromCursor(String locationSetting, Cursor cursor) {
+        ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, cursor.getCount());
+        int dateIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_DATE);
+        int weatherIdIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_WEATHER_ID);
+        int maxTempIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_MAX_TEMP);
+        int minTempIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_MIN_TEMP);
+        int descriptionIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_SHORT_DESC);
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            snapshot.mDates[i] = WeatherContract.normalizeDate(cursor.getLong(dateIndex));
+            snapshot.mWeatherIds[i] = cursor.getInt(weatherIdIndex);
+            snapshot.mMaxTemps[i] = cursor.getDouble(maxTempIndex);
+            snapshot.mMinTemps[i] = cursor.getDouble(minTempIndex);
+            snapshot.mDescriptions[i] = cursor.getString(descriptionIndex);
+        }
+        return snapshot;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public int getDayCount() {
+        return mDates.length;
+    }
+
+    /**
+     * @return the index of the first day on or after the normalized date, or -1 if the
+     * snapshot ends before it.
+     */
+    public int indexFrom(long normalizedDate) {
+        // A forecast is a couple of weeks long, so a linear scan is as quick as anything
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] >= normalizedDate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the day with exactly this normalized date, or -1.
+     */
+    public int indexOf(long normalizedDate) {
+        int index = indexFrom(normalizedDate);
+        return index != -1 && mDates[index] == normalizedDate ? index : -1;
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    public double getMaxTemp(int index) {
+        return mMaxTemps[index];
+    }
+
+    public double getMinTemp(int index) {
+        return mMinTemps[index];
+    }
+
+    public String getDescription(int index) {
+        return mDescriptions[index];
+    }
+
+    /**
+     * Presents the days from start to end (exclusive) as a cursor with the given columns, or
+     * returns null if the snapshot doesn't hold one of them.  The snapshot has no row ids, so
+     * an _id column is filled with the date, which is just as unique within one location.
+     */
+    Cursor toCursor(String[] projection, int start, int end) {
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = columnFor(projection[i]);
+            if (columns[i] == COLUMN_UNKNOWN) {
+                return null;
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, Math.max(0, end - start));
+        Object[] row = new Object[projection.length];
+        for (int day = start; day < end; day++) {
+            for (int i = 0; i < columns.length; i++) {
+                switch (columns[i]) {
+                    case COLUMN_DATE:
+                        row[i] = mDates[day];
+                        break;
+                    case COLUMN_WEATHER_ID:
+                        row[i] = mWeatherIds[day];
+                        break;
+                    case COLUMN_MAX_TEMP:
+                        row[i] = mMaxTemps[day];
+                        break;
+                    case COLUMN_MIN_TEMP:
+                        row[i] = mMinTemps[day];
+                        break;
+                    default:
+                        row[i] = mDescriptions[day];
+                        break;
+                }
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static final int COLUMN_UNKNOWN = -1;
+    private static final int COLUMN_DATE = 0;
+    private static final int COLUMN_WEATHER_ID = 1;
+    private static final int COLUMN_MAX_TEMP = 2;
+    private static final int COLUMN_MIN_TEMP = 3;
+    private static final int COLUMN_SHORT_DESC = 4;
+
+    private static int columnFor(String column) {
+        // Projections may qualify a column with its table, as in "weather._id"
+        String name = column.substring(column.lastIndexOf('.') + 1);
+        if (BaseColumns._ID.equals(name) || WeatherEntry.COLUMN_DATE.equals(name)) {
+            return COLUMN_DATE;
+        } else if (WeatherEntry.COLUMN_WEATHER_ID.equals(name)) {
+            return COLUMN_WEATHER_ID;
+        } else if (WeatherEntry.COLUMN_MAX_TEMP.equals(name)) {
+            return COLUMN_MAX_TEMP;
+        } else if (WeatherEntry.COLUMN_MIN_TEMP.equals(name)) {
+            return COLUMN_MIN_TEMP;
+        } else if (WeatherEntry.COLUMN_SHORT_DESC.equals(name)) {
+            return COLUMN_SHORT_DESC;
+        }
+        return COLUMN_UNKNOWN;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide store of the forecast snapshots the sync adapter publishes after each sync, so
+ * that the widgets, Muzei, the notification and the wearable can read the forecast the sync
+ * just wrote without going back to SQLite.
+ * <p/>
+ * The map is replaced wholesale on every change and read through a volatile field, so readers
+ * never lock and always see a complete set of snapshots.  The provider invalidates a location
+ * whenever its weather rows are written, so a snapshot is never older than the database.
+ */
+public final class ForecastSnapshotCache {
+    private static final UriMatcher sUriMatcher = WeatherProvider.buildUriMatcher();
+
+    private static volatile Map<String, ForecastSnapshot> sSnapshots = Collections.emptyMap();
+
+    private ForecastSnapshotCache() {
+    }
+
+    /**
+     * @return the snapshot for the location, or null if there isn't a current one.
+     */
+    public static ForecastSnapshot get(String locationSetting) {
+        return sSnapshots.get(locationSetting);
+    }
+
+    public static synchronized void publish(Collection<ForecastSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        Map<String, ForecastSnapshot> updated = new HashMap<String, ForecastSnapshot>(sSnapshots);
+        for (ForecastSnapshot snapshot : snapshots) {
+            updated.put(snapshot.getLocationSetting(), snapshot);
+        }
+        sSnapshots = Collections.unmodifiableMap(updated);
+    }
+
+    static synchronized void invalidate(String locationSetting) {
+        if (sSnapshots.containsKey(locationSetting)) {
+            Map<String, ForecastSnapshot> updated =
+                    new HashMap<String, ForecastSnapshot>(sSnapshots);
+            updated.remove(locationSetting);
+            sSnapshots = Collections.unmodifiableMap(updated);
+        }
+    }
+
+    static synchronized void invalidateAll() {
+        sSnapshots = Collections.emptyMap();
+    }
+
+    /**
+     * Answers a weather/&lt;location&gt; (with a start date) or weather/&lt;location&gt;/&lt;date&gt;
+     * query from the cached snapshot when it can, and from the provider otherwise.  Only
+     * date-ordered queries for columns the snapshot holds can be served from memory.
+     */
+    public static Cursor query(Context context, Uri uri, String[] projection, String sortOrder) {
+        Cursor cursor = querySnapshot(uri, projection, sortOrder);
+        if (cursor != null) {
+            return cursor;
+        }
+        return context.getContentResolver().query(uri, projection, null, null, sortOrder);
+    }
+
+    private static Cursor querySnapshot(Uri uri, String[] projection, String sortOrder) {
+        if (projection == null || (sortOrder != null
+                && !sortOrder.trim().equalsIgnoreCase(WeatherEntry.COLUMN_DATE + " ASC"))) {
+            return null;
+        }
+        switch (sUriMatcher.match(uri)) {
+            case WeatherProvider.WEATHER_WITH_LOCATION: {
+                ForecastSnapshot snapshot = get(WeatherEntry.getLocationSettingFromUri(uri));
+                long startDate = WeatherEntry.getStartDateFromUri(uri);
+                // Earlier days than the snapshot holds may still be stored, and the query
+                // would return them too
+                if (snapshot == null || snapshot.getDayCount() == 0
+                        || startDate < snapshot.getDate(0)) {
+                    return null;
+                }
+                int start = snapshot.indexFrom(startDate);
+                if (start == -1) {
+                    return null;
+                }
+                return snapshot.toCursor(projection, start, snapshot.getDayCount());
+            }
+            case WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE: {
+                ForecastSnapshot snapshot = get(WeatherEntry.getLocationSettingFromUri(uri));
+                if (snapshot == null) {
+                    return null;
+                }
+                int index = snapshot.indexOf(WeatherEntry.getDateFromUri(uri));
+                if (index == -1) {
+                    return null;
+                }
+                return snapshot.toCursor(projection, index, index + 1);
+            }
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.android.sunshine.app.data;
+
+/**
+ * What a retention pass removed and what it did to the size of the database.
+ */
+public final class RetentionReport {
+    public final int mDeletedWeatherRows;
+    public final int mEvictedLocations;
+    public final boolean mFullVacuum;
+    public final DatabaseStats mBefore;
+    public final DatabaseStats mAfter;
+
+    RetentionReport(int deletedWeatherRows, int evictedLocations, boolean fullVacuum,
+                    DatabaseStats before, DatabaseStats after) {
+        mDeletedWeatherRows = deletedWeatherRows;
+        mEvictedLocations = evictedLocations;
+        mFullVacuum = fullVacuum;
+        mBefore = before;
+        mAfter = after;
+    }
+
+    @Override
+    public String toString() {
+        return "deleted " + mDeletedWeatherRows + " weather rows and " + mEvictedLocations
+                + " locations, " + (mFullVacuum ? "full" : "incremental") + " vacuum; before: "
+                + mBefore + "; after: " + mAfter;
+    }
+}
@@ -81,6 +81,16 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // HTTP validators from the last forecast downloaded for this location, sent back as
+        // If-None-Match and If-Modified-Since so an unchanged forecast costs only a 304.
+        // Either may be null when the server didn't supply it.
+        public static final String COLUMN_ETAG = "etag";
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+        // When the location was last preferred or synced as a recent one, in milliseconds since
+        // the epoch.  Locations left unused for long enough are removed with their weather.
+        public static final String COLUMN_LAST_USED = "last_used";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -126,6 +136,14 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Marks a bulkInsert as an upsert: rows whose values are unchanged are left untouched,
+        // changed rows are updated in place, and the returned count is the rows written.
+        public static final String QUERY_PARAM_UPSERT = "upsert";
+
+        public static Uri buildWeatherUpsertUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(QUERY_PARAM_UPSERT, "true").build();
+        }
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
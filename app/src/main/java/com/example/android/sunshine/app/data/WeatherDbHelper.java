@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -28,12 +30,57 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Index serving every per-location weather query.  The UNIQUE (date, location_id) constraint
+    // has an index of its own, but with the date leading it can't find one location's rows.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+
+    // Looking up a location's rows by location_id, then date, matches the join from the
+    // location table and hands them back already in date order.
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    // Databases older than this predate the migrations below and are rebuilt from scratch.
+    static final int FIRST_MIGRATABLE_VERSION = 2;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging the provider's queries run on pooled read connections and
+        // see the last committed data, instead of queueing behind the sync's write transaction.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Before Jelly Bean the helper can't configure it, so switch it on once open
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
+    /**
+     * Starts a write transaction that doesn't lock out readers.  Under write-ahead logging
+     * an exclusive transaction behaves the same, but this is the form Android documents for
+     * use with it.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static void beginWriteTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
     }
 
     @Override
@@ -45,7 +92,10 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_ETAG + " TEXT, " +
+                LocationEntry.COLUMN_LAST_MODIFIED + " TEXT, " +
+                LocationEntry.COLUMN_LAST_USED + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -81,18 +131,57 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < FIRST_MIGRATABLE_VERSION) {
+            // This database is only a cache for online data, so anything too old to migrate is
+            // simply discarded and rebuilt.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        // Otherwise step through each version in turn, so that the cached forecasts survive
+        // and nobody needs a full sync just because they upgraded.  SQLiteOpenHelper runs this
+        // in a transaction, so a failed step leaves the database at its old version.
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrateTo(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Brings a database at version - 1 up to version.  When you change the schema in onCreate,
+     * add the matching step here and a snapshot of the old schema to TestMigrations.
+     */
+    private static void migrateTo(SQLiteDatabase sqLiteDatabase, int version) {
+        switch (version) {
+            case 3:
+                // HTTP validators for conditional forecast requests
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_ETAG + " TEXT");
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_LAST_MODIFIED + " TEXT");
+                break;
+            case 4:
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                break;
+            case 5:
+                // Count every existing location as used now, so none is evicted on upgrade
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_LAST_USED +
+                        " INTEGER NOT NULL DEFAULT 0");
+                sqLiteDatabase.execSQL("UPDATE " + LocationEntry.TABLE_NAME +
+                        " SET " + LocationEntry.COLUMN_LAST_USED + " = " +
+                        System.currentTimeMillis());
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
     }
 }
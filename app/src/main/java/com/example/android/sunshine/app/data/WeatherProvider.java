@@ -17,13 +17,21 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
@@ -68,29 +76,87 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location_id = ? AND date BETWEEN ? AND ?
+    private static final String sLocationIdWithDateRangeSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ? ";
+
+    // Above this many rows for one location a write notifies weather/<location> once instead of
+    // weather/<location>/<date> per row, so a list watching the location doesn't requery per day.
+    static final int MAX_ROW_NOTIFICATIONS = 3;
+    // Above this many rows a write doesn't bother working out what it touched and notifies the
+    // whole table, as a bulk delete of everything would.
+    static final int MAX_TRACKED_ROWS = 256;
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    /**
+     * The weather rows a write touched, as parallel lists of location id and date.
+     */
+    static final class ChangedRows {
+        final ArrayList<Long> mLocationIds = new ArrayList<Long>();
+        final ArrayList<Long> mDates = new ArrayList<Long>();
+
+        void add(long locationId, long date) {
+            mLocationIds.add(locationId);
+            mDates.add(date);
+        }
+
+        void add(ContentValues values) {
+            mLocationIds.add(values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+            mDates.add(values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+        }
+
+        int size() {
+            return mDates.size();
+        }
+    }
+
+    /**
+     * Builds the SQL run for a weather/&lt;location&gt; query, with or without a start date.
+     * Package-private so that tests can check its query plan.
+     */
+    @SuppressWarnings("deprecation")
+    static String buildWeatherByLocationSettingSql(String[] projection, boolean withStartDate,
+                                                   String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(projection,
+                withStartDate ? sLocationSettingWithStartDateSelection : sLocationSettingSelection,
+                null,
+                null,
+                null,
+                sortOrder,
+                null);
+    }
+
+    /**
+     * Builds the SQL run for a weather/&lt;location&gt;/&lt;date&gt; query.  Package-private so
+     * that tests can check its query plan.
+     */
+    @SuppressWarnings("deprecation")
+    static String buildWeatherByLocationSettingAndDateSql(String[] projection, String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(projection,
+                sLocationSettingAndDaySelection,
+                null,
+                null,
+                null,
+                sortOrder,
+                null);
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
         String[] selectionArgs;
-        String selection;
-
         if (startDate == 0) {
-            selection = sLocationSettingSelection;
             selectionArgs = new String[]{locationSetting};
         } else {
             selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder
-        );
+        return mOpenHelper.getReadableDatabase().rawQuery(
+                buildWeatherByLocationSettingSql(projection, startDate != 0, sortOrder),
+                selectionArgs);
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
@@ -98,14 +164,9 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+        return mOpenHelper.getReadableDatabase().rawQuery(
+                buildWeatherByLocationSettingAndDateSql(projection, sortOrder),
+                new String[]{locationSetting, Long.toString(date)});
     }
 
     /*
@@ -238,6 +299,9 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                ChangedRows changedRows = new ChangedRows();
+                changedRows.add(values);
+                notifyWeatherChanged(db, changedRows);
                 break;
             }
             case LOCATION: {
@@ -246,12 +310,12 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                getContext().getContentResolver().notifyChange(returnUri, null);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
@@ -263,21 +327,28 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
+                // The rows have to be identified before they're gone
+                ChangedRows changedRows = findWeatherRows(db, selection, selectionArgs);
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    notifyWeatherChanged(db, changedRows);
+                }
                 break;
-            case LOCATION:
+            }
+            case LOCATION: {
+                long[] locationIds = findLocationIds(db, selection, selectionArgs);
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    notifyLocationChanged(locationIds);
+                }
                 break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
         return rowsDeleted;
     }
 
@@ -297,21 +368,34 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
+                // Moving rows to another location or date touches URIs we can't see from
+                // here, so those updates notify the whole table.
+                ChangedRows changedRows =
+                        values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                                || values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)
+                                ? null
+                                : findWeatherRows(db, selection, selectionArgs);
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    notifyWeatherChanged(db, changedRows);
+                }
                 break;
-            case LOCATION:
+            }
+            case LOCATION: {
+                long[] locationIds = findLocationIds(db, selection, selectionArgs);
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    notifyLocationChanged(locationIds);
+                }
                 break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
         return rowsUpdated;
     }
 
@@ -321,27 +405,388 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
+                if (Boolean.parseBoolean(uri.getQueryParameter(
+                        WeatherContract.WeatherEntry.QUERY_PARAM_UPSERT))) {
+                    ChangedRows result;
+                    WeatherDbHelper.beginWriteTransaction(db);
+                    try {
+                        result = upsertWeather(db, values);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    // Nobody needs to requery if nothing was written
+                    if (result.size() > 0) {
+                        notifyWeatherChanged(db, result);
+                    }
+                    return result.size();
+                }
+                WeatherDbHelper.beginWriteTransaction(db);
+                ChangedRows insertedRows = new ChangedRows();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
-                            returnCount++;
+                            insertedRows.add(value);
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                notifyWeatherChanged(db, insertedRows);
+                return insertedRows.size();
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Finds the location id and date of the weather rows a selection matches, or returns null if
+     * there are too many to be worth notifying one by one.
+     */
+    private ChangedRows findWeatherRows(SQLiteDatabase db, String selection,
+                                        String[] selectionArgs) {
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null,
+                Integer.toString(MAX_TRACKED_ROWS + 1));
+        try {
+            if (cursor.getCount() > MAX_TRACKED_ROWS) {
+                return null;
+            }
+            ChangedRows rows = new ChangedRows();
+            while (cursor.moveToNext()) {
+                rows.add(cursor.getLong(0), cursor.getLong(1));
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Finds the ids of the locations a selection matches, or returns null if there are too many
+     * to be worth notifying one by one.
+     */
+    private long[] findLocationIds(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null,
+                Integer.toString(MAX_TRACKED_ROWS + 1));
+        try {
+            if (cursor.getCount() > MAX_TRACKED_ROWS) {
+                return null;
+            }
+            long[] locationIds = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                locationIds[i] = cursor.getLong(0);
+            }
+            return locationIds;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Notifies weather/&lt;location&gt;/&lt;date&gt; for each changed row, which also reaches
+     * anyone watching weather/&lt;location&gt; or the whole table with descendants.  A location
+     * with more than {@link #MAX_ROW_NOTIFICATIONS} changed rows gets one weather/&lt;location&gt;
+     * notification instead, and rows that can't be traced to a location setting fall back to
+     * notifying the whole table.  The cached snapshots of those locations are dropped too.
+     */
+    private void notifyWeatherChanged(SQLiteDatabase db, ChangedRows rows) {
+        ContentResolver resolver = getContext().getContentResolver();
+        if (rows == null) {
+            ForecastSnapshotCache.invalidateAll();
+            resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            return;
+        }
+
+        // Group the dates by location, keeping the order the rows were written in
+        Map<Long, ArrayList<Long>> datesByLocation = new LinkedHashMap<Long, ArrayList<Long>>();
+        for (int i = 0; i < rows.size(); i++) {
+            Long locationId = rows.mLocationIds.get(i);
+            Long date = rows.mDates.get(i);
+            if (locationId == null || date == null) {
+                ForecastSnapshotCache.invalidateAll();
+                resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+                return;
+            }
+            ArrayList<Long> dates = datesByLocation.get(locationId);
+            if (dates == null) {
+                dates = new ArrayList<Long>();
+                datesByLocation.put(locationId, dates);
+            }
+            dates.add(date);
+        }
+        if (datesByLocation.isEmpty()) {
+            return;
+        }
+
+        Map<Long, String> settings = getLocationSettings(db, datesByLocation.keySet());
+        for (Map.Entry<Long, ArrayList<Long>> entry : datesByLocation.entrySet()) {
+            String locationSetting = settings.get(entry.getKey());
+            if (locationSetting == null) {
+                // A row whose location is missing can't be reached by any location's URI
+                ForecastSnapshotCache.invalidateAll();
+                resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+                return;
+            }
+        }
+        for (Map.Entry<Long, ArrayList<Long>> entry : datesByLocation.entrySet()) {
+            String locationSetting = settings.get(entry.getKey());
+            // Whatever was cached for this location no longer matches the database
+            ForecastSnapshotCache.invalidate(locationSetting);
+            ArrayList<Long> dates = entry.getValue();
+            if (dates.size() > MAX_ROW_NOTIFICATIONS) {
+                resolver.notifyChange(
+                        WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting), null);
+            } else {
+                for (long date : dates) {
+                    resolver.notifyChange(WeatherContract.WeatherEntry
+                            .buildWeatherLocationWithDate(locationSetting, date), null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Notifies location/&lt;id&gt; for each changed location, or the whole table if they
+     * weren't tracked.
+     */
+    private void notifyLocationChanged(long[] locationIds) {
+        ContentResolver resolver = getContext().getContentResolver();
+        if (locationIds == null) {
+            resolver.notifyChange(WeatherContract.LocationEntry.CONTENT_URI, null);
+            return;
+        }
+        for (long locationId : locationIds) {
+            resolver.notifyChange(WeatherContract.LocationEntry.buildLocationUri(locationId), null);
+        }
+    }
+
+    private Map<Long, String> getLocationSettings(SQLiteDatabase db, Collection<Long> locationIds) {
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID + " IN (");
+        String[] selectionArgs = new String[locationIds.size()];
+        int i = 0;
+        for (long locationId : locationIds) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i++] = Long.toString(locationId);
+        }
+        selection.append(')');
+
+        HashMap<Long, String> settings = new HashMap<Long, String>();
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(),
+                selectionArgs,
+                null,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                settings.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return settings;
+    }
+
+    /**
+     * Writes weather rows without the delete and re-insert that ON CONFLICT REPLACE does.  Each
+     * incoming row is compared with the stored row for the same location and date: new rows are
+     * inserted, changed rows are updated in place (so their _id stays the same) with only the
+     * columns that differ, and identical rows aren't written at all.  Must be called inside a
+     * transaction.
+     */
+    ChangedRows upsertWeather(SQLiteDatabase db, ContentValues[] values) {
+        ChangedRows result = new ChangedRows();
+
+        // Group by location so that each location's stored rows are read with one query
+        Map<Long, ArrayList<ContentValues>> byLocation =
+                new LinkedHashMap<Long, ArrayList<ContentValues>>();
+        for (ContentValues value : values) {
+            normalizeDate(value);
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (locationId == null || date == null) {
+                // Can't be matched to a stored row; let the constraints decide, as insert does
+                if (db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value) != -1) {
+                    result.add(value);
+                }
+                continue;
+            }
+            ArrayList<ContentValues> locationValues = byLocation.get(locationId);
+            if (locationValues == null) {
+                locationValues = new ArrayList<ContentValues>();
+                byLocation.put(locationId, locationValues);
+            }
+            locationValues.add(value);
+        }
+
+        for (Map.Entry<Long, ArrayList<ContentValues>> entry : byLocation.entrySet()) {
+            long locationId = entry.getKey();
+            long minDate = Long.MAX_VALUE;
+            long maxDate = Long.MIN_VALUE;
+            for (ContentValues value : entry.getValue()) {
+                long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                minDate = Math.min(minDate, date);
+                maxDate = Math.max(maxDate, date);
+            }
+
+            Cursor stored = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    null,
+                    sLocationIdWithDateRangeSelection,
+                    new String[]{Long.toString(locationId),
+                            Long.toString(minDate), Long.toString(maxDate)},
+                    null,
+                    null,
+                    null);
+            try {
+                int idIndex = stored.getColumnIndex(WeatherContract.WeatherEntry._ID);
+                int dateIndex = stored.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+                HashMap<Long, Integer> positionByDate = new HashMap<Long, Integer>();
+                while (stored.moveToNext()) {
+                    positionByDate.put(stored.getLong(dateIndex), stored.getPosition());
+                }
+
+                for (ContentValues value : entry.getValue()) {
+                    long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                    Integer position = positionByDate.get(date);
+                    if (position == null) {
+                        if (db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value) != -1) {
+                            result.add(locationId, date);
+                        }
+                        continue;
+                    }
+                    stored.moveToPosition(position);
+                    ContentValues changedValues = getChangedValues(stored, value);
+                    if (changedValues.size() > 0) {
+                        db.update(WeatherContract.WeatherEntry.TABLE_NAME, changedValues,
+                                WeatherContract.WeatherEntry._ID + " = ?",
+                                new String[]{Long.toString(stored.getLong(idIndex))});
+                        result.add(locationId, date);
+                    }
+                }
+            } finally {
+                stored.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the subset of the incoming values that differ from the cursor's current row.
+     * Numbers are compared as doubles, since every numeric weather column is either an
+     * INTEGER small enough to be exact or a REAL.
+     */
+    private static ContentValues getChangedValues(Cursor stored, ContentValues incoming) {
+        ContentValues changedValues = new ContentValues(incoming);
+        for (Map.Entry<String, Object> entry : incoming.valueSet()) {
+            int index = stored.getColumnIndex(entry.getKey());
+            if (index == -1) {
+                // Unknown column; keep it so the update fails the way an insert would
+                continue;
+            }
+            Object value = entry.getValue();
+            boolean unchanged;
+            if (value == null) {
+                unchanged = stored.isNull(index);
+            } else if (value instanceof Number) {
+                unchanged = !stored.isNull(index)
+                        && stored.getDouble(index) == ((Number) value).doubleValue();
+            } else {
+                unchanged = value.toString().equals(stored.getString(index));
+            }
+            if (unchanged) {
+                changedValues.remove(entry.getKey());
+            }
+        }
+        return changedValues;
+    }
+
+    // PRAGMA auto_vacuum value for INCREMENTAL
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * Removes weather older than pastDays before today and locations whose last use is older
+     * than unusedLocationMillis, except those in keepLocations, then hands the freed pages
+     * back to the file system.  The first pass switches the database to incremental
+     * auto-vacuum, which takes one full VACUUM; later passes only release the free pages.
+     * <p/>
+     * This rewrites the database file, so call it off the sync thread and from inside this
+     * process, through {@link android.content.ContentProviderClient#getLocalContentProvider()}.
+     */
+    public RetentionReport applyRetention(long now, int pastDays, long unusedLocationMillis,
+                                          Collection<String> keepLocations) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        DatabaseStats before = DatabaseStats.read(db);
+
+        // Dates are stored normalized, so anything before the start of the first kept day goes
+        long firstKeptDate = WeatherContract.normalizeDate(now - pastDays * DAY_IN_MILLIS);
+        int deletedWeatherRows = delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(firstKeptDate)});
+
+        int evictedLocations = 0;
+        String[] keep = keepLocations.toArray(new String[keepLocations.size()]);
+        StringBuilder selection = new StringBuilder(
+                WeatherContract.LocationEntry.COLUMN_LAST_USED + " < ?");
+        if (keep.length > 0) {
+            selection.append(" AND ").append(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING)
+                    .append(" NOT IN (");
+            for (int i = 0; i < keep.length; i++) {
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+        }
+        String[] selectionArgs = new String[keep.length + 1];
+        selectionArgs[0] = Long.toString(now - unusedLocationMillis);
+        System.arraycopy(keep, 0, selectionArgs, 1, keep.length);
+        long[] unusedIds = findLocationIds(db, selection.toString(), selectionArgs);
+        if (unusedIds != null) {
+            for (long locationId : unusedIds) {
+                // Weather goes first, since it refers to the location
+                String[] idArgs = new String[]{Long.toString(locationId)};
+                deletedWeatherRows += delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                        WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?", idArgs);
+                evictedLocations += delete(WeatherContract.LocationEntry.CONTENT_URI,
+                        WeatherContract.LocationEntry._ID + " = ?", idArgs);
+            }
+        }
+
+        // VACUUM can't run inside a transaction, so this works on the database directly
+        boolean fullVacuum = DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)
+                != AUTO_VACUUM_INCREMENTAL;
+        if (fullVacuum) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        } else {
+            Cursor vacuum = db.rawQuery("PRAGMA incremental_vacuum", null);
+            // The pages are released as the statement is stepped
+            while (vacuum.moveToNext()) {
+                // nothing to read
+            }
+            vacuum.close();
+        }
+
+        return new RetentionReport(deletedWeatherRows, evictedLocations, fullVacuum,
+                before, DatabaseStats.read(db));
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
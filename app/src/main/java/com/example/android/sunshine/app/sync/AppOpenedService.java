@@ -0,0 +1,21 @@
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * Records that the app was opened and reschedules the periodic sync to match, off the UI
+ * thread.
+ */
+public class AppOpenedService extends IntentService {
+
+    public AppOpenedService() {
+        super("AppOpenedService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        SyncScheduler.getInstance(this).onAppOpened();
+        SunshineSyncAdapter.updatePeriodicSync(this);
+    }
+}
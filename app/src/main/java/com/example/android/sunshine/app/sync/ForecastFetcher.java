@@ -0,0 +1,217 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downloads and decodes the forecast for a single location.  It touches neither the content
+ * provider nor preferences, so several fetches can safely run side by side.
+ */
+class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final ForecastHttpClient mClient;
+    private final String mBaseUrl;
+    private final int mNumDays;
+    private final SyncCancellation mCancellation;
+
+    ForecastFetcher(String baseUrl, int numDays) {
+        this(ForecastHttpClient.getInstance(), baseUrl, numDays, null);
+    }
+
+    ForecastFetcher(ForecastHttpClient client, String baseUrl, int numDays) {
+        this(client, baseUrl, numDays, null);
+    }
+
+    /**
+     * @param cancellation the sync the fetches are part of, which stops them if cancelled;
+     *                     may be null
+     */
+    ForecastFetcher(ForecastHttpClient client, String baseUrl, int numDays,
+                    SyncCancellation cancellation) {
+        mClient = client;
+        mBaseUrl = baseUrl;
+        mNumDays = numDays;
+        mCancellation = cancellation;
+    }
+
+    Uri buildForecastUri(String locationSetting) {
+        return Uri.parse(mBaseUrl).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, locationSetting)
+                .appendQueryParameter(FORMAT_PARAM, "json")
+                .appendQueryParameter(UNITS_PARAM, "metric")
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(mNumDays))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+    }
+
+    LocationForecast fetch(String locationSetting) {
+        return fetch(new LocationForecast(locationSetting));
+    }
+
+    /**
+     * Fetches one location, as a conditional request when the forecast carries validators.
+     * Failures are reported through the returned status rather than thrown, so that one bad
+     * location doesn't abort the others.  Once the sync is cancelled the status is left
+     * unknown.
+     */
+    LocationForecast fetch(LocationForecast forecast) {
+        String locationSetting = forecast.mLocationSetting;
+        if (mCancellation != null && mCancellation.isCanceled()) {
+            return forecast;
+        }
+
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
+        ForecastHttpClient.Response response = null;
+        try {
+            URL url = new URL(buildForecastUri(locationSetting).toString());
+
+            // Ask OpenWeatherMap over the client's pooled connections
+            Map<String, String> headers = new HashMap<String, String>();
+            if (forecast.mEtag != null) {
+                headers.put(HEADER_IF_NONE_MATCH, forecast.mEtag);
+            }
+            if (forecast.mLastModified != null) {
+                headers.put(HEADER_IF_MODIFIED_SINCE, forecast.mLastModified);
+            }
+            response = mClient.get(url, headers, mCancellation);
+
+            int statusCode = response.getStatusCode();
+            forecast.mResponseCode = statusCode;
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // What we stored last time is still current, so there's nothing to read.
+                forecast.mNotModified = true;
+                forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                return forecast;
+            }
+            if (statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                // OpenWeatherMap's answer for a location it doesn't know
+                forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                return forecast;
+            }
+            if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new IOException("HTTP " + statusCode);
+            }
+
+            // Decode the forecast straight off the wire rather than buffering the whole body
+            InputStream inputStream = response.getBody();
+            if (inputStream == null) {
+                // Nothing to do.
+                return forecast;
+            }
+            readForecast(inputStream, forecast);
+            if (forecast.mStatus == SunshineSyncAdapter.LOCATION_STATUS_OK) {
+                forecast.mEtag = response.getHeaderField(HEADER_ETAG);
+                forecast.mLastModified = response.getHeaderField(HEADER_LAST_MODIFIED);
+            }
+        } catch (IOException e) {
+            if (mCancellation != null && mCancellation.isCanceled()) {
+                Log.d(LOG_TAG, "Fetch of " + locationSetting + " stopped, the sync was canceled");
+                forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+                return forecast;
+            }
+            Log.e(LOG_TAG, "Error fetching " + locationSetting, e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            if (response != null) {
+                // Leaves the connection to be reused by the next fetch
+                response.close();
+            }
+        }
+        return forecast;
+    }
+
+    /**
+     * Decode the forecast response with a {@link ForecastJsonReader}, collecting one
+     * ContentValues per day as it is read.
+     */
+    static void readForecast(InputStream inputStream, final LocationForecast forecast)
+            throws IOException, JSONException {
+
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        final int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        // now we work exclusively in UTC
+        final Time utcTime = new Time();
+
+        final List<ContentValues> days = new ArrayList<ContentValues>();
+        int code = ForecastJsonReader.read(inputStream, new ForecastJsonReader.Callback() {
+            @Override
+            public void onCity(String name, double lat, double lon) {
+                forecast.mCityName = name;
+                forecast.mLat = lat;
+                forecast.mLon = lon;
+            }
+
+            @Override
+            public void onDay(int dayIndex, ContentValues weatherValues) {
+                // Cheating to convert this to UTC time, which is what we want anyhow
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        utcTime.setJulianDay(julianStartDay + dayIndex));
+                days.add(weatherValues);
+            }
+        });
+
+        switch (code) {
+            case HttpURLConnection.HTTP_OK:
+                forecast.mWeatherValues = days.toArray(new ContentValues[days.size()]);
+                forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                break;
+            default:
+                forecast.mStatus = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                break;
+        }
+    }
+}
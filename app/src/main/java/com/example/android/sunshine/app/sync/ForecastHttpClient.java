@@ -0,0 +1,267 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Makes the forecast requests over pooled, gzipped connections with bounded timeouts, and
+ * keeps count of what each request cost.
+ */
+class ForecastHttpClient {
+    private static final String LOG_TAG = ForecastHttpClient.class.getSimpleName();
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    // What's left of a body is read so the connection can be reused, unless it's this long
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    // How long to wait for a connection, and for each read once connected
+    static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    static final int READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    private static ForecastHttpClient sInstance;
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+
+    // Totals over every request made through the client
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mWireBytes = new AtomicLong();
+    private final AtomicLong mBodyBytes = new AtomicLong();
+    private final AtomicLong mLatencyMillis = new AtomicLong();
+
+    ForecastHttpClient() {
+        this(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+    }
+
+    ForecastHttpClient(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    static synchronized ForecastHttpClient getInstance() {
+        if (sInstance == null) {
+            sInstance = new ForecastHttpClient();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sends a GET and waits for the response headers.  The response must be closed.
+     *
+     * @param headers      request headers to send, on top of the ones the client adds
+     * @param cancellation the sync the request is part of, which disconnects it if cancelled;
+     *                     may be null
+     * @throws InterruptedIOException if the sync has already been cancelled
+     */
+    Response get(URL url, Map<String, String> headers, SyncCancellation cancellation)
+            throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (cancellation != null && !cancellation.register(connection)) {
+            throw new InterruptedIOException("Sync canceled");
+        }
+        try {
+            connection.setConnectTimeout(mConnectTimeoutMillis);
+            connection.setReadTimeout(mReadTimeoutMillis);
+            connection.setRequestMethod("GET");
+            connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            int statusCode = connection.getResponseCode();
+            return new Response(url, connection, cancellation, statusCode, start);
+        } catch (IOException e) {
+            if (cancellation != null) {
+                cancellation.unregister(connection);
+            }
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return body bytes received, before decompression
+     */
+    long getWireBytes() {
+        return mWireBytes.get();
+    }
+
+    /**
+     * @return body bytes received, after decompression
+     */
+    long getBodyBytes() {
+        return mBodyBytes.get();
+    }
+
+    /**
+     * @return time spent on requests, from sending each one to closing its response
+     */
+    long getLatencyMillis() {
+        return mLatencyMillis.get();
+    }
+
+    /**
+     * Counts the bytes read through it, and notes whether a read failed.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long mCount;
+        boolean mFailed;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if (b != -1) {
+                    mCount++;
+                }
+                return b;
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            try {
+                int read = super.read(buffer, offset, count);
+                if (read > 0) {
+                    mCount += read;
+                }
+                return read;
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            try {
+                long skipped = super.skip(count);
+                mCount += skipped;
+                return skipped;
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * A response whose headers have arrived.  Closing it finishes off the body, records what
+     * the request cost, and hands the connection back for reuse.
+     */
+    class Response {
+        private final URL mUrl;
+        private final HttpURLConnection mConnection;
+        private final SyncCancellation mCancellation;
+        private final int mStatusCode;
+        private final long mStartMillis;
+        private CountingInputStream mWire;
+        private CountingInputStream mBody;
+        private boolean mClosed;
+
+        Response(URL url, HttpURLConnection connection, SyncCancellation cancellation,
+                 int statusCode, long startMillis) {
+            mUrl = url;
+            mConnection = connection;
+            mCancellation = cancellation;
+            mStatusCode = statusCode;
+            mStartMillis = startMillis;
+        }
+
+        int getStatusCode() {
+            return mStatusCode;
+        }
+
+        String getHeaderField(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * @return the body, decompressed, or null if there isn't one
+         */
+        InputStream getBody() throws IOException {
+            if (mBody == null) {
+                InputStream in = mStatusCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getErrorStream() : mConnection.getInputStream();
+                if (in == null) {
+                    return null;
+                }
+                mWire = new CountingInputStream(in);
+                InputStream decoded = ENCODING_GZIP.equalsIgnoreCase(
+                        mConnection.getContentEncoding()) ? new GZIPInputStream(mWire) : mWire;
+                mBody = new CountingInputStream(decoded);
+            }
+            return mBody;
+        }
+
+        void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (mCancellation != null) {
+                mCancellation.unregister(mConnection);
+            }
+            // After a timeout or a cancel, draining would only wait on the same dead connection
+            boolean reusable = (mCancellation == null || !mCancellation.isCanceled())
+                    && (mWire == null || !mWire.mFailed);
+            try {
+                InputStream body = reusable ? getBody() : null;
+                if (body != null) {
+                    byte[] buffer = new byte[4096];
+                    long drained = 0;
+                    int read;
+                    while (drained < MAX_DRAIN_BYTES && (read = body.read(buffer)) != -1) {
+                        drained += read;
+                    }
+                    reusable = drained < MAX_DRAIN_BYTES;
+                    body.close();
+                }
+            } catch (IOException e) {
+                reusable = false;
+            }
+            if (!reusable) {
+                // Whatever's left on the connection is no use to the next request
+                mConnection.disconnect();
+            }
+
+            long wireBytes = mWire == null ? 0 : mWire.mCount;
+            long bodyBytes = mBody == null ? 0 : mBody.mCount;
+            long latencyMillis = SystemClock.elapsedRealtime() - mStartMillis;
+            mRequestCount.incrementAndGet();
+            mWireBytes.addAndGet(wireBytes);
+            mBodyBytes.addAndGet(bodyBytes);
+            mLatencyMillis.addAndGet(latencyMillis);
+            Log.d(LOG_TAG, mUrl.getPath() + ": " + mStatusCode + ", " + wireBytes + " bytes for "
+                    + bodyBytes + " in " + latencyMillis + "ms");
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Decodes an OpenWeatherMap daily forecast response and hands each day to a {@link Callback}
+ * as soon as it has been read.
+ * <p/>
+ * On Honeycomb and higher the response is pulled straight off the network stream with a
+ * {@link JsonReader}, so neither the raw body nor a JSONObject tree is ever held in memory.
+ * Older devices fall back to the org.json tree, which emits exactly the same callbacks.
+ */
+public class ForecastJsonReader {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * Receives the pieces of a forecast in the order they are decoded.  The day values carry
+     * every weather column except {@link WeatherEntry#COLUMN_LOC_KEY} and
+     * {@link WeatherEntry#COLUMN_DATE}, which are up to the caller.
+     */
+    public interface Callback {
+        void onCity(String cityName, double lat, double lon);
+
+        void onDay(int dayIndex, ContentValues weatherValues);
+    }
+
+    private ForecastJsonReader() {
+    }
+
+    /**
+     * Streams a forecast response.  The stream is consumed but not closed.
+     *
+     * @return the "cod" reported by the server, or HTTP_OK if it didn't send one.  The city is
+     * only emitted once the response has turned out to be HTTP_OK; the days are emitted as they
+     * are read, and an error response has none.
+     */
+    public static int read(InputStream in, Callback callback) throws IOException, JSONException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return read(readFully(in), callback);
+        }
+        return readStream(in, callback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int readStream(InputStream in, Callback callback)
+            throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        int code = HttpURLConnection.HTTP_OK;
+        boolean hasList = false;
+        // OWM sends the city ahead of the "cod", so it's held until the code is known
+        City city = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    code = reader.nextInt();
+                    if (code != HttpURLConnection.HTTP_OK) {
+                        // Error bodies carry nothing else we want.
+                        return code;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    city = readCity(reader);
+                } else if (OWM_LIST.equals(name)) {
+                    int dayIndex = 0;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        callback.onDay(dayIndex++, readDay(reader));
+                    }
+                    reader.endArray();
+                    hasList = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens as runtime exceptions; to the sync adapter
+            // they mean the same thing as an unparseable JSONObject.
+            throw new JSONException(e.getMessage());
+        }
+        if (city == null) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        if (!hasList) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        callback.onCity(city.mName, city.mLat, city.mLon);
+        return code;
+    }
+
+    private static class City {
+        final String mName;
+        final double mLat;
+        final double mLon;
+
+        City(String name, double lat, double lon) {
+            mName = name;
+            mLat = lat;
+            mLon = lon;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static City readCity(JsonReader reader) throws IOException, JSONException {
+        String cityName = null;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (cityName == null || Double.isNaN(lat) || Double.isNaN(lon)) {
+            throw new JSONException("Incomplete " + OWM_CITY);
+        }
+        return new City(cityName, lat, lon);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ContentValues readDay(JsonReader reader) throws IOException, JSONException {
+        ContentValues weatherValues = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                weatherValues.put(WeatherEntry.COLUMN_PRESSURE, reader.nextDouble());
+            } else if (OWM_HUMIDITY.equals(name)) {
+                weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, reader.nextInt());
+            } else if (OWM_WINDSPEED.equals(name)) {
+                weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, reader.nextDouble());
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                weatherValues.put(WeatherEntry.COLUMN_DEGREES, reader.nextDouble());
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, reader.nextDouble());
+                    } else if (OWM_MIN.equals(tempName)) {
+                        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, reader.nextDouble());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, reader.nextString());
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, reader.nextInt());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        checkDay(weatherValues);
+        return weatherValues;
+    }
+
+    // The tree parser throws on any missing field, so the streaming one has to as well.
+    private static void checkDay(ContentValues weatherValues) throws JSONException {
+        if (!weatherValues.containsKey(WeatherEntry.COLUMN_PRESSURE)
+                || !weatherValues.containsKey(WeatherEntry.COLUMN_HUMIDITY)
+                || !weatherValues.containsKey(WeatherEntry.COLUMN_WIND_SPEED)
+                || !weatherValues.containsKey(WeatherEntry.COLUMN_DEGREES)
+                || !weatherValues.containsKey(WeatherEntry.COLUMN_MAX_TEMP)
+                || !weatherValues.containsKey(WeatherEntry.COLUMN_MIN_TEMP)
+                || !weatherValues.containsKey(WeatherEntry.COLUMN_SHORT_DESC)
+                || !weatherValues.containsKey(WeatherEntry.COLUMN_WEATHER_ID)) {
+            throw new JSONException("Incomplete forecast day " + weatherValues);
+        }
+    }
+
+    /**
+     * Decodes a forecast that has already been read into a String, using the org.json tree.
+     * This is the pre-Honeycomb path and the baseline the streaming reader is measured against.
+     */
+    public static int read(String forecastJsonStr, Callback callback) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (errorCode != HttpURLConnection.HTTP_OK) {
+                return errorCode;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        String cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        callback.onCity(cityName,
+                cityCoord.getDouble(OWM_LATITUDE), cityCoord.getDouble(OWM_LONGITUDE));
+
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, dayForecast.getDouble(OWM_PRESSURE));
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, dayForecast.getInt(OWM_HUMIDITY));
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, dayForecast.getDouble(OWM_WINDSPEED));
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, dayForecast.getDouble(OWM_WIND_DIRECTION));
+
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, weatherObject.getString(OWM_DESCRIPTION));
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, weatherObject.getInt(OWM_WEATHER_ID));
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, temperatureObject.getDouble(OWM_MAX));
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, temperatureObject.getDouble(OWM_MIN));
+
+            callback.onDay(i, weatherValues);
+        }
+        return HttpURLConnection.HTTP_OK;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        InputStreamReader reader = new InputStreamReader(in, "UTF-8");
+        StringBuilder buffer = new StringBuilder();
+        char[] chunk = new char[4096];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            buffer.append(chunk, 0, read);
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+
+/**
+ * The outcome of fetching one location's forecast.  When {@link #mStatus} is
+ * {@link SunshineSyncAdapter#LOCATION_STATUS_OK} the city fields and day values are filled in,
+ * unless {@link #mNotModified} says the stored forecast is still current; the day values
+ * already carry their date but not yet a location key.
+ * <p/>
+ * {@link #mEtag} and {@link #mLastModified} start out as the validators to send with the
+ * request and are replaced by the ones the server returned with a new forecast.
+ */
+class LocationForecast {
+    final String mLocationSetting;
+    @SunshineSyncAdapter.LocationStatus
+    int mStatus = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+    // The HTTP status the server answered with, or 0 if it never answered
+    int mResponseCode;
+    String mCityName;
+    double mLat;
+    double mLon;
+    ContentValues[] mWeatherValues = new ContentValues[0];
+    boolean mNotModified;
+    String mEtag;
+    String mLastModified;
+
+    LocationForecast(String locationSetting) {
+        mLocationSetting = locationSetting;
+    }
+
+    LocationForecast(String locationSetting, String etag, String lastModified) {
+        mLocationSetting = locationSetting;
+        mEtag = etag;
+        mLastModified = lastModified;
+    }
+}
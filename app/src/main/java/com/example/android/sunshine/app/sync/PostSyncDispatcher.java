@@ -0,0 +1,204 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hands a newly stored forecast to everything that shows it outside the app, side by side on a
+ * small pool with a time limit each, and at most once per window.
+ */
+class PostSyncDispatcher {
+    private static final String LOG_TAG = PostSyncDispatcher.class.getSimpleName();
+
+    private static final int MAX_CONCURRENT_CONSUMERS = 3;
+    // Idle threads are let go, since syncs are hours apart
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    /**
+     * Something that shows the forecast and needs to hear when it's stored.
+     */
+    interface Consumer {
+        /**
+         * Called on a worker thread, which is interrupted if the consumer runs out of time.
+         *
+         * @param forecast the preferred location's forecast from today on, shared with the
+         *                 other consumers; it has no days if nothing is stored
+         */
+        void onForecastStored(ForecastSnapshot forecast) throws Exception;
+    }
+
+    private static class Registration {
+        final String mName;
+        final long mTimeoutMillis;
+        final Consumer mConsumer;
+
+        Registration(String name, long timeoutMillis, Consumer consumer) {
+            mName = name;
+            mTimeoutMillis = timeoutMillis;
+            mConsumer = consumer;
+        }
+    }
+
+    private final Context mContext;
+    private final long mWindowMillis;
+    private final List<Registration> mConsumers = new ArrayList<Registration>();
+    // Runs the dispatches themselves, one at a time
+    private final ScheduledThreadPoolExecutor mScheduler;
+    private final ThreadPoolExecutor mWorkers;
+
+    // Guarded by this
+    private int mPendingConsumers;
+    private boolean mScheduled;
+    private long mLastRunMillis;
+
+    private final Runnable mRun = new Runnable() {
+        @Override
+        public void run() {
+            runPending();
+        }
+    };
+
+    PostSyncDispatcher(Context context, long windowMillis) {
+        mContext = context.getApplicationContext();
+        mWindowMillis = windowMillis;
+        mLastRunMillis = SystemClock.elapsedRealtime() - windowMillis;
+        mScheduler = new ScheduledThreadPoolExecutor(1);
+        mScheduler.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        mScheduler.allowCoreThreadTimeOut(true);
+        mWorkers = new ThreadPoolExecutor(MAX_CONCURRENT_CONSUMERS, MAX_CONCURRENT_CONSUMERS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mWorkers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Adds a consumer.  Consumers are all added before the first dispatch.
+     *
+     * @return the consumer's flag, to pass to {@link #dispatch(int)}
+     */
+    synchronized int addConsumer(String name, long timeoutMillis, Consumer consumer) {
+        if (mConsumers.size() == Integer.SIZE) {
+            throw new IllegalStateException("Too many consumers");
+        }
+        mConsumers.add(new Registration(name, timeoutMillis, consumer));
+        return 1 << (mConsumers.size() - 1);
+    }
+
+    /**
+     * Runs the flagged consumers, straight away if they haven't run within the window and at
+     * its end otherwise.  Consumers flagged again before they run only run once.  Never waits.
+     */
+    synchronized void dispatch(int consumers) {
+        mPendingConsumers |= consumers;
+        if (mScheduled || mPendingConsumers == 0) {
+            return;
+        }
+        mScheduled = true;
+        long delay = Math.max(0, mLastRunMillis + mWindowMillis - SystemClock.elapsedRealtime());
+        mScheduler.schedule(mRun, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runPending() {
+        int consumers;
+        List<Registration> registrations;
+        synchronized (this) {
+            consumers = mPendingConsumers;
+            mPendingConsumers = 0;
+            mScheduled = false;
+            mLastRunMillis = SystemClock.elapsedRealtime();
+            registrations = new ArrayList<Registration>(mConsumers);
+        }
+
+        final ForecastSnapshot forecast = loadForecast();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(registrations.size());
+        long[] deadlines = new long[registrations.size()];
+        for (int i = 0; i < registrations.size(); i++) {
+            if ((consumers & (1 << i)) == 0) {
+                futures.add(null);
+                continue;
+            }
+            final Registration registration = registrations.get(i);
+            deadlines[i] = SystemClock.elapsedRealtime() + registration.mTimeoutMillis;
+            futures.add(mWorkers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        registration.mConsumer.onForecastStored(forecast);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "Error updating " + registration.mName, e);
+                    }
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+            try {
+                future.get(Math.max(0, deadlines[i] - SystemClock.elapsedRealtime()),
+                        TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                Log.w(LOG_TAG, registrations.get(i).mName + " took longer than "
+                        + registrations.get(i).mTimeoutMillis + "ms, stopping it");
+                future.cancel(true);
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Error updating " + registrations.get(i).mName, e);
+            } catch (InterruptedException e) {
+                // Only the process going away interrupts this thread
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the preferred location's forecast from today on, from the snapshot the sync left
+     * when it can.
+     */
+    ForecastSnapshot loadForecast() {
+        String location = Utility.getPreferredLocation(mContext);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor cursor = ForecastSnapshotCache.query(mContext, weatherUri, FORECAST_COLUMNS,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return ForecastSnapshot.fromValues(location, new ContentValues[0]);
+        }
+        try {
+            return ForecastSnapshot.fromCursor(location, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.ContentProviderClient;
+import android.content.ContentProvider;
+import android.content.Intent;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.RetentionReport;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
+
+/**
+ * Applies the retention policy after a sync: drops weather older than the configured number of
+ * past days, removes locations that haven't been used for a while, and releases the space they
+ * took.  It runs on its own worker thread so a sync never waits on a vacuum.
+ */
+public class RetentionService extends IntentService {
+    private static final String LOG_TAG = RetentionService.class.getSimpleName();
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    public RetentionService() {
+        super("RetentionService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        int pastDays = getResources().getInteger(R.integer.retention_past_days);
+        long unusedLocationMillis =
+                getResources().getInteger(R.integer.retention_unused_location_days) * DAY_IN_MILLIS;
+
+        ContentProviderClient client = getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        if (client == null) {
+            return;
+        }
+        try {
+            // The provider lives in this process; vacuuming isn't something to expose through
+            // the ContentProvider interface, so talk to it directly.
+            ContentProvider provider = client.getLocalContentProvider();
+            if (!(provider instanceof WeatherProvider)) {
+                return;
+            }
+            RetentionReport report = ((WeatherProvider) provider).applyRetention(
+                    System.currentTimeMillis(), pastDays, unusedLocationMillis,
+                    Utility.getSyncLocations(this));
+            Log.d(LOG_TAG, "Retention " + report);
+        } finally {
+            client.release();
+        }
+    }
+}
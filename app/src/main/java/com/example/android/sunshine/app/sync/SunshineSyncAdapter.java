@@ -2,7 +2,6 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
@@ -24,71 +23,65 @@ import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.ArtCache;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
+import com.example.android.sunshine.shared.WearForecast;
 import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
-        GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
+    // Interval at which to sync with the weather, in seconds, until SyncScheduler adapts it.
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
-
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // Number of days requested from OpenWeatherMap on every sync
+    private static final int FORECAST_DAYS = 14;
+    // Most locations fetched at the same time during one sync
+    private static final int MAX_CONCURRENT_FETCHES = 3;
+    // How long a sync may take before it gives up, so it can't hold the sync slot forever
+    private static final long SYNC_BUDGET_MILLIS = 90 * 1000;
+    // A sync asked for within this long of the last one that got everything is skipped
+    public static final long SYNC_FRESHNESS_MILLIS = 15 * 60 * 1000;
+    // The freshness a sync was asked for with, if not SYNC_FRESHNESS_MILLIS
+    private static final String EXTRA_MAX_AGE_MILLIS = "max_age_millis";
+
+
+    // Syncs finishing within this long of each other refresh everything showing the forecast
+    // once, at the end of the window
+    private static final long POST_SYNC_WINDOW_MILLIS = 30 * 1000;
+    // How long each of those gets before it's interrupted
+    private static final long ART_TIMEOUT_MILLIS = 30 * 1000;
+    private static final long BROADCAST_TIMEOUT_MILLIS = 5 * 1000;
+    private static final long WEARABLE_TIMEOUT_MILLIS = 10 * 1000;
+    private static final long NOTIFICATION_TIMEOUT_MILLIS = 20 * 1000;
 
 
     @Retention(RetentionPolicy.SOURCE)
@@ -102,288 +95,368 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    private static final String WEAR_DATE_STRING_KEY = "date";
-    private static final String WEAR_HIGH_TEMP_KEY = "high";
-    private static final String WEAR_LOW_TEMP_KEY = "low";
-    private static final String WEAR_WEATHER_IMAGE_KEY = "weather_image";
-    GoogleApiClient mGoogleApiClient;
+    // The wearable's data item holds the forecast as a WearForecast payload
+    private static final String WEAR_FORECAST_KEY = "forecast";
+    // Julian day on which the widgets, Muzei and the wearable were last refreshed
+    private int mLastRefreshedDay;
+
+    // The running sync's, for onSyncCanceled to stop it; null between syncs
+    private volatile SyncCancellation mCancellation;
+
+    private final SyncRetryPolicy mRetryPolicy;
+    private final SyncCoalescer mCoalescer;
+    private final SyncScheduler mScheduler;
+    private final PostSyncDispatcher mPostSync;
+    // Flags of the post-sync consumers that show stored data, and of the notification
+    private final int mRefreshConsumers;
+    private final int mNotificationConsumer;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
-        mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
-        mGoogleApiClient.connect();
+        mRetryPolicy = new SyncRetryPolicy(PreferenceManager.getDefaultSharedPreferences(context),
+                context.getString(R.string.pref_sync_failures), SyncRetryPolicy.SYSTEM_CLOCK,
+                new Random());
+        mCoalescer = SyncCoalescer.getInstance(context);
+        mScheduler = SyncScheduler.getInstance(context);
+        mPostSync = new PostSyncDispatcher(context, POST_SYNC_WINDOW_MILLIS);
+        int art = mPostSync.addConsumer("art", ART_TIMEOUT_MILLIS,
+                new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public void onForecastStored(ForecastSnapshot forecast) {
+                        prefetchArt(forecast);
+                    }
+                });
+        int widgets = mPostSync.addConsumer("widgets", BROADCAST_TIMEOUT_MILLIS,
+                new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public void onForecastStored(ForecastSnapshot forecast) {
+                        updateWidgets();
+                    }
+                });
+        int muzei = mPostSync.addConsumer("Muzei", BROADCAST_TIMEOUT_MILLIS,
+                new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public void onForecastStored(ForecastSnapshot forecast) {
+                        updateMuzei();
+                    }
+                });
+        int wearable = mPostSync.addConsumer("wearable", WEARABLE_TIMEOUT_MILLIS,
+                new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public void onForecastStored(ForecastSnapshot forecast) {
+                        sendWeatherToWearable(forecast);
+                    }
+                });
+        mRefreshConsumers = art | widgets | muzei | wearable;
+        mNotificationConsumer = mPostSync.addConsumer("notification", NOTIFICATION_TIMEOUT_MILLIS,
+                new PostSyncDispatcher.Consumer() {
+                    @Override
+                    public void onForecastStored(ForecastSnapshot forecast) {
+                        notifyWeather(forecast);
+                    }
+                });
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
-
+        SyncCancellation cancellation = new SyncCancellation(SYNC_BUDGET_MILLIS);
+        mCancellation = cancellation;
+        boolean ran;
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            ran = performSync(cancellation, syncResult,
+                    extras.getLong(EXTRA_MAX_AGE_MILLIS, SYNC_FRESHNESS_MILLIS));
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            mCancellation = null;
+        }
+        // Being cancelled isn't a failure, and the framework reschedules the sync itself.  A
+        // sync that was skipped or joined another has nothing of its own to report.
+        if (ran && !Thread.currentThread().isInterrupted()) {
+            mRetryPolicy.onSyncFinished(syncResult);
+            mScheduler.onSyncFinished(syncResult);
+            updatePeriodicSync(getContext());
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     * <p/>
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Stops the running sync: interrupts its thread, as the default does, and disconnects its
+     * downloads, which don't notice being interrupted.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
+    @Override
+    public void onSyncCanceled() {
+        super.onSyncCanceled();
+        SyncCancellation cancellation = mCancellation;
+        if (cancellation != null) {
+            cancellation.cancel();
+        }
+    }
 
+    /**
+     * Syncs the locations, unless they were synced within the last maxAgeMillis or a sync of
+     * the same locations is already running, which this one then waits for.
+     *
+     * @return false if the sync was skipped or joined one already running
+     */
+    private boolean performSync(final SyncCancellation cancellation, final SyncResult syncResult,
+                                long maxAgeMillis) {
+        final List<String> locations = Utility.getSyncLocations(getContext());
+        final String key = SyncCoalescer.getKey(locations);
+        if (mCoalescer.isFresh(key, maxAgeMillis)) {
+            Log.d(LOG_TAG, "Forecasts synced within the last " + maxAgeMillis + "ms, skipping");
+            // The preferred location may have changed since, but was in the set all the same
+            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            return false;
+        }
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if (forecastJson.has(OWM_MESSAGE_CODE)) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+            boolean ran = mCoalescer.run(key, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (fetchAndStore(locations, cancellation, syncResult)) {
+                        mCoalescer.markFresh(key);
+                    }
+                    return null;
+                }
+            }, cancellation.getRemainingMillis());
+            if (!ran) {
+                Log.d(LOG_TAG, "Joined the sync already running for the same locations");
+                // That sync set the status of the location preferred when it started
+                if (mCoalescer.isFresh(key, SYNC_BUDGET_MILLIS)) {
+                    setLocationStatus(getContext(), LOCATION_STATUS_OK);
                 }
             }
+            return ran;
+        } catch (InterruptedException e) {
+            cancellation.cancel();
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            // The sync being waited for reports its own outcome
+            Log.w(LOG_TAG, "Gave up waiting on the sync already running");
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error syncing forecasts", e.getCause());
+            setLocationStatus(getContext(), LOCATION_STATUS_UNKNOWN);
+            mRetryPolicy.record(SyncRetryPolicy.FAILURE_IO, syncResult);
+            return true;
+        }
+        return false;
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for (int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
+    /**
+     * @return whether every location was fetched, and stored if it changed
+     */
+    private boolean fetchAndStore(List<String> locations, SyncCancellation cancellation,
+                                  SyncResult syncResult) {
+        final ForecastFetcher fetcher = new ForecastFetcher(ForecastHttpClient.getInstance(),
+                ForecastFetcher.FORECAST_BASE_URL, FORECAST_DAYS, cancellation);
+
+        // Each location is its own round trip, so overlap them; the pool is kept small so a
+        // sync never opens more than a handful of connections at once.
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(locations.size(), MAX_CONCURRENT_FETCHES));
+        List<LocationForecast> forecasts = new ArrayList<LocationForecast>(locations.size());
+        try {
+            List<Future<LocationForecast>> pending =
+                    new ArrayList<Future<LocationForecast>>(locations.size());
+            for (final LocationForecast request : buildRequests(locations)) {
+                pending.add(executor.submit(new Callable<LocationForecast>() {
+                    @Override
+                    public LocationForecast call() {
+                        return fetcher.fetch(request);
+                    }
+                }));
+            }
+            for (Future<LocationForecast> future : pending) {
+                forecasts.add(future.get(cancellation.getRemainingMillis(),
+                        TimeUnit.MILLISECONDS));
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled; leave whatever is stored alone.
+            cancellation.cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException e) {
+            Log.w(LOG_TAG, "Sync ran out of time after " + SYNC_BUDGET_MILLIS + "ms");
+            cancellation.cancel();
+            mRetryPolicy.record(SyncRetryPolicy.FAILURE_IO, syncResult);
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error fetching forecasts", e);
+            setLocationStatus(getContext(), LOCATION_STATUS_UNKNOWN);
+            mRetryPolicy.record(SyncRetryPolicy.FAILURE_IO, syncResult);
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        for (LocationForecast forecast : forecasts) {
+            mRetryPolicy.record(SyncRetryPolicy.classify(forecast), syncResult);
+        }
+        if (cancellation.isCanceled()) {
+            Log.d(LOG_TAG, "Sync canceled after downloading, nothing stored");
+            return false;
+        }
+        storeForecasts(forecasts, cancellation, syncResult);
+        // storeForecasts stops short if cancelled before storing.  A location the server
+        // doesn't know is skipped rather than failed, but still leaves the set incomplete.
+        return !cancellation.isCanceled() && !syncResult.hasError()
+                && syncResult.stats.numSkippedEntries == 0;
+    }
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
+    /**
+     * Pairs each location with the validators of its last download.  They are only sent when
+     * forecasts from today onwards are still stored: if the old rows have aged out, a 304
+     * would leave the location with nothing to show.
+     */
+    private List<LocationForecast> buildRequests(List<String> locations) {
+        ContentResolver resolver = getContext().getContentResolver();
+        List<LocationForecast> requests = new ArrayList<LocationForecast>(locations.size());
+        for (String location : locations) {
+            String etag = null;
+            String lastModified = null;
+            Cursor locationCursor = resolver.query(
+                    WeatherContract.LocationEntry.CONTENT_URI,
+                    new String[]{WeatherContract.LocationEntry.COLUMN_ETAG,
+                            WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED},
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{location},
+                    null);
+            if (locationCursor != null) {
+                if (locationCursor.moveToFirst()) {
+                    etag = locationCursor.getString(0);
+                    lastModified = locationCursor.getString(1);
+                }
+                locationCursor.close();
+            }
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+            if (etag != null || lastModified != null) {
+                Cursor weatherCursor = resolver.query(
+                        WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                                location, System.currentTimeMillis()),
+                        new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                        null, null, null);
+                boolean hasCurrentData = weatherCursor != null && weatherCursor.moveToFirst();
+                if (weatherCursor != null) {
+                    weatherCursor.close();
+                }
+                if (!hasCurrentData) {
+                    etag = null;
+                    lastModified = null;
+                }
+            }
+            requests.add(new LocationForecast(location, etag, lastModified));
+        }
+        return requests;
+    }
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+    /**
+     * Writes every newly downloaded forecast with a single bulkInsert, which the provider runs
+     * as one transaction, then notifies the consumers once for the whole batch.  Locations the
+     * server reported as not modified are left alone, and if none changed there is nothing to
+     * store or announce.  The first forecast is the preferred location, and only its outcome
+     * is shown to the user.
+     */
+    private void storeForecasts(List<LocationForecast> forecasts,
+                                SyncCancellation cancellation, SyncResult syncResult) {
+        ArrayList<ContentValues> cVList = new ArrayList<ContentValues>(
+                forecasts.size() * FORECAST_DAYS);
+        ArrayList<LocationForecast> updated = new ArrayList<LocationForecast>(forecasts.size());
+        ArrayList<Long> updatedIds = new ArrayList<Long>(forecasts.size());
+        int notModified = 0;
+        for (LocationForecast forecast : forecasts) {
+            if (forecast.mStatus != LOCATION_STATUS_OK) {
+                Log.d(LOG_TAG, "Skipping " + forecast.mLocationSetting
+                        + ", status " + forecast.mStatus);
+                continue;
+            }
+            if (forecast.mNotModified) {
+                notModified++;
+                continue;
+            }
+            // The city can arrive after the list, so the foreign key is filled in once both are read
+            long locationId = addLocation(forecast.mLocationSetting,
+                    forecast.mCityName, forecast.mLat, forecast.mLon);
+            for (ContentValues weatherValues : forecast.mWeatherValues) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                cVList.add(weatherValues);
+            }
+            updated.add(forecast);
+            updatedIds.add(locationId);
+        }
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+        // The last point at which stopping leaves nothing half done; once the forecast is
+        // stored, the consumers are told about it, which doesn't wait on them.
+        if (cancellation.isCanceled()) {
+            Log.d(LOG_TAG, "Sync canceled before storing, nothing stored");
+            return;
+        }
 
-                ContentValues weatherValues = new ContentValues();
+        // add to database
+        int changedCount = 0;
+        if (cVList.size() > 0) {
+            ContentValues[] cvArray = new ContentValues[cVList.size()];
+            cVList.toArray(cvArray);
+            // Upsert so that days whose forecast hasn't changed aren't rewritten
+            changedCount = getContext().getContentResolver().bulkInsert(
+                    WeatherContract.WeatherEntry.buildWeatherUpsertUri(), cvArray);
+            syncResult.stats.numEntries += cvArray.length;
+            syncResult.stats.numUpdates += changedCount;
+
+            // Only remember the validators once the forecast they describe has been stored
+            for (int i = 0; i < updated.size(); i++) {
+                storeValidators(updatedIds.get(i), updated.get(i));
+            }
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+            // Every write above dropped the cached snapshots of the locations it touched, so
+            // publish fresh ones, taken straight from what was stored, before anyone reads them.
+            ArrayList<ForecastSnapshot> snapshots = new ArrayList<ForecastSnapshot>(updated.size());
+            for (LocationForecast forecast : updated) {
+                snapshots.add(ForecastSnapshot.fromValues(
+                        forecast.mLocationSetting, forecast.mWeatherValues));
             }
+            ForecastSnapshotCache.publish(snapshots);
+        }
+
+        // The widgets, Muzei and the wearable only show stored data, so they only need
+        // refreshing when it changed, or when a new day means they should show another row.
+        // The notification goes by time of day instead.  They all run off the sync thread.
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int today = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        int consumers = 0;
+        if (changedCount > 0 || today != mLastRefreshedDay) {
+            consumers |= mRefreshConsumers;
+            mLastRefreshedDay = today;
+        }
+        if (cVList.size() > 0) {
+            consumers |= mNotificationConsumer;
+        }
+        mPostSync.dispatch(consumers);
 
-            int inserted = 0;
-            // add to database
-            if (cVVector.size() > 0) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                sendWeatherToWearable();
+        ArrayList<String> usedLocations = new ArrayList<String>(forecasts.size());
+        for (LocationForecast forecast : forecasts) {
+            if (forecast.mStatus == LOCATION_STATUS_OK) {
+                usedLocations.add(forecast.mLocationSetting);
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
+        if (!usedLocations.isEmpty()) {
+            markLocationsUsed(usedLocations);
+            // Old days and forgotten locations are cleared out away from the sync thread
+            getContext().startService(new Intent(getContext(), RetentionService.class));
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + changedCount + " of " + cVList.size()
+                + " rows changed for " + updated.size() + " locations, "
+                + notModified + " not modified");
+        if (!forecasts.isEmpty()) {
+            setLocationStatus(getContext(), forecasts.get(0).mStatus);
+        }
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    private void prefetchArt(ForecastSnapshot forecast) {
+        // Decode the art the list, the widgets and the notification show before they ask
+        int[] weatherIds = new int[forecast.getDayCount()];
+        for (int i = 0; i < weatherIds.length; i++) {
+            weatherIds[i] = forecast.getWeatherId(i);
         }
+        ArtCache.getInstance(getContext()).prefetch(weatherIds);
     }
 
     private void updateWidgets() {
@@ -404,7 +477,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
     }
 
-    private void notifyWeather() {
+    private void notifyWeather(ForecastSnapshot forecast) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -419,46 +492,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                int day = forecast.indexOf(
+                        WeatherContract.normalizeDate(System.currentTimeMillis()));
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (day >= 0) {
+                    int weatherId = forecast.getWeatherId(day);
+                    double high = forecast.getMaxTemp(day);
+                    double low = forecast.getMinTemp(day);
+                    String desc = forecast.getDescription(day);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                    // Retrieve the large icon, prefetched at its size with the rest of the art
+                    Bitmap largeIcon = ArtCache.getInstance(context)
+                            .get(weatherId, ArtCache.SIZE_NOTIFICATION);
+                    if (largeIcon == null) {
                         largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
                     }
                     String title = context.getString(R.string.app_name);
@@ -506,7 +555,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
@@ -561,6 +609,35 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         return locationId;
     }
 
+    /**
+     * Records that the locations are still in use, which keeps retention from evicting them.
+     */
+    private void markLocationsUsed(List<String> locationSettings) {
+        StringBuilder selection = new StringBuilder(
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " IN (");
+        for (int i = 0; i < locationSettings.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(')');
+        ContentValues usedValues = new ContentValues();
+        usedValues.put(WeatherContract.LocationEntry.COLUMN_LAST_USED, System.currentTimeMillis());
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI,
+                usedValues,
+                selection.toString(),
+                locationSettings.toArray(new String[locationSettings.size()]));
+    }
+
+    private void storeValidators(long locationId, LocationForecast forecast) {
+        ContentValues validatorValues = new ContentValues();
+        validatorValues.put(WeatherContract.LocationEntry.COLUMN_ETAG, forecast.mEtag);
+        validatorValues.put(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED,
+                forecast.mLastModified);
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI,
+                validatorValues,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)});
+    }
+
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -581,14 +658,61 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     }
 
     /**
-     * Helper method to have the sync adapter sync immediately
+     * Reschedules the periodic sync if the period SyncScheduler wants has changed.
+     */
+    static void updatePeriodicSync(Context context) {
+        SyncScheduler scheduler = SyncScheduler.getInstance(context);
+        int interval = scheduler.getIntervalSeconds(SyncScheduler.readConstraints(context));
+        if (scheduler.setScheduled(interval)) {
+            Log.d(SunshineSyncAdapter.class.getSimpleName(),
+                    "Syncing every " + interval + "s");
+            configurePeriodicSync(context, interval, interval / 3);
+        }
+    }
+
+    /**
+     * Syncs more often for a while, since someone is looking at the forecast.  Safe to call
+     * from the UI thread; the work is done by {@link AppOpenedService}.
+     *
+     * @param context The context used to start the service
+     */
+    public static void onAppOpened(Context context) {
+        context.startService(new Intent(context, AppOpenedService.class));
+    }
+
+    /**
+     * Helper method to have the sync adapter sync immediately, unless the forecasts for the
+     * current locations were synced within the last SYNC_FRESHNESS_MILLIS
      *
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        syncImmediately(context, SYNC_FRESHNESS_MILLIS);
+    }
+
+    /**
+     * Helper method to have the sync adapter sync immediately, unless the forecasts for the
+     * current locations were synced within the last maxAgeMillis.  Requests made while a sync
+     * of the same locations is running wait for it rather than fetching again.
+     *
+     * @param context      The context used to access the account service
+     * @param maxAgeMillis How old the forecasts may be; 0 always syncs
+     */
+    public static void syncImmediately(Context context, long maxAgeMillis) {
+        String key = SyncCoalescer.getKey(Utility.getSyncLocations(context));
+        if (SyncCoalescer.getInstance(context).isFresh(key, maxAgeMillis)) {
+            // Every location in the set, the newly preferred one included, was just synced
+            // without a problem, so its status is known without asking the server
+            PreferenceManager.getDefaultSharedPreferences(context).edit()
+                    .putInt(context.getString(R.string.pref_location_status_key),
+                            LOCATION_STATUS_OK)
+                    .apply();
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putLong(EXTRA_MAX_AGE_MILLIS, maxAgeMillis);
         ContentResolver.requestSync(getSyncAccount(context),
                 context.getString(R.string.content_authority), bundle);
     }
@@ -637,6 +761,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
          * Since we've created an account
          */
         SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        SyncScheduler.getInstance(context).setScheduled(SYNC_INTERVAL);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -667,71 +792,37 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         spe.commit();
     }
 
-    private void sendWeatherToWearable() {
+    private void sendWeatherToWearable(ForecastSnapshot forecast) {
         Context context = getContext();
-        String location = Utility.getPreferredLocation(context);
-        long date = System.currentTimeMillis();
-        Uri weatherURI = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(location, date);
+        WearForecast wearForecast = toWearForecast(forecast, System.currentTimeMillis(),
+                Utility.isMetric(context));
         DataMap dataMap = new DataMap();
-
-        Cursor cursor = context.getContentResolver()
-                .query(weatherURI, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            String highString = Utility.formatTemperature(context, cursor.getDouble(INDEX_MAX_TEMP));
-            String lowString = Utility.formatTemperature(context, cursor.getDouble(INDEX_MIN_TEMP));
-
-            Log.d(LOG_TAG, highString + "  " + lowString);
-//            dataMap.putLong(WEAR_DATE_KEY, date);
-            dataMap.putString(WEAR_DATE_STRING_KEY, Utility.prettifyDate(date));
-            dataMap.putString(WEAR_HIGH_TEMP_KEY, highString);
-            dataMap.putString(WEAR_LOW_TEMP_KEY, lowString);
-            dataMap.putInt(WEAR_WEATHER_IMAGE_KEY, cursor.getInt(INDEX_WEATHER_ID));
-        }
-        DataItemThread dataItemThread = new DataItemThread(context, dataMap);
-        dataItemThread.start();
+        dataMap.putByteArray(WEAR_FORECAST_KEY, wearForecast.encode());
+        // The wearable only hears about it if it's changed, so there's no timestamp in the map
+        WearablePublisher.getInstance(context)
+                .publish(context.getString(R.string.weather_data_path), dataMap);
     }
 
-    private class DataItemThread extends Thread {
-        Context mContext;
-        DataMap mDataMap;
-
-        DataItemThread(Context context, DataMap data) {
-            mContext = context;
-            mDataMap = data;
-        }
-
-        public void run() {
-            //TODO do all of the calculations for dates on mobile side.
-//            Bitmap weatherImage = BitmapFactory
-//                    .decodeResource(mContext.getResources(),
-//                            Utility.getArtResourceForWeatherCondition(mDataMap.getInt(WEAR_WEATHER_IMAGE_KEY)));
-//            Asset weatherImgAsset = createAssetFromBitmap(weatherImage);
-//            mDataMap.putAsset("BITMAP", weatherImgAsset); //test
-
-            PutDataMapRequest putDataMapRequest = PutDataMapRequest
-                    .create(mContext.getString(R.string.weather_data_path));
-            putDataMapRequest.getDataMap().putAll(mDataMap);
-
-            //TODO: remove following line. added to ensure data map always changed
-            putDataMapRequest.getDataMap().putLong("CURRENT_TIME_MILLIS", System.currentTimeMillis());
-
-            PutDataRequest request = putDataMapRequest.asPutDataRequest();
-            request.setUrgent();
-            PendingResult<DataApi.DataItemResult> pendingResult =
-            Wearable.DataApi.putDataItem(mGoogleApiClient, request);
-                    pendingResult.setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                        @Override
-                        public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                            if (!dataItemResult.getStatus().isSuccess()) {
-                                Log.e("SYNC DATAITEM", "failed to send data");
-                            } else {
-                                Log.d("SYNC DATAITEM", "data item stored and ready to go out");
-                            }
-                        }
-                    });
+    /**
+     * @return the days of the forecast from the one containing now on, keyed by Julian day
+     */
+    static WearForecast toWearForecast(ForecastSnapshot forecast, long now, boolean metric) {
+        int first = forecast.indexFrom(WeatherContract.normalizeDate(now));
+        int days = first < 0 ? 0 : forecast.getDayCount() - first;
+        int[] julianDays = new int[days];
+        int[] weatherIds = new int[days];
+        double[] maxTemps = new double[days];
+        double[] minTemps = new double[days];
+        Time time = new Time();
+        for (int i = 0; i < days; i++) {
+            long date = forecast.getDate(first + i);
+            time.set(date);
+            julianDays[i] = Time.getJulianDay(date, time.gmtoff);
+            weatherIds[i] = forecast.getWeatherId(first + i);
+            maxTemps[i] = forecast.getMaxTemp(first + i);
+            minTemps[i] = forecast.getMinTemp(first + i);
         }
-
+        return new WearForecast(metric, julianDays, weatherIds, maxTemps, minTemps);
     }
 
 //    private static Asset createAssetFromBitmap(Bitmap bitmap) {
@@ -739,19 +830,4 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 //        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
 //        return Asset.createFromBytes(byteStream.toByteArray());
 //    }
-
-    @Override
-    public void onConnected(@Nullable Bundle bundle) {
-
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-
-    }
-
-    @Override
-    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-
-    }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells one sync's work when to stop: when the framework cancels it, or its time is up.
+ * Cancelling disconnects the connections registered here, since a blocked read doesn't notice
+ * being interrupted.
+ */
+class SyncCancellation {
+    private final long mDeadlineMillis;
+
+    // Guarded by this
+    private boolean mCanceled;
+    private final Set<HttpURLConnection> mConnections = new HashSet<HttpURLConnection>();
+
+    /**
+     * @param budgetMillis how long the sync has, from now, before it counts as cancelled
+     */
+    SyncCancellation(long budgetMillis) {
+        mDeadlineMillis = SystemClock.elapsedRealtime() + budgetMillis;
+    }
+
+    /**
+     * Stops the sync, disconnecting whatever connections it has open.  May be called from any
+     * thread, any number of times.
+     */
+    void cancel() {
+        HttpURLConnection[] connections;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            connections = mConnections.toArray(new HttpURLConnection[mConnections.size()]);
+            mConnections.clear();
+        }
+        for (HttpURLConnection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    synchronized boolean isCanceled() {
+        return mCanceled || getRemainingMillis() == 0;
+    }
+
+    /**
+     * @return how long is left of the sync's budget, or 0 if it's spent
+     */
+    long getRemainingMillis() {
+        return Math.max(0, mDeadlineMillis - SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Registers a connection to be disconnected if the sync is cancelled while it's in use.
+     *
+     * @return false if the sync has already been cancelled, in which case the connection
+     * shouldn't be used
+     */
+    synchronized boolean register(HttpURLConnection connection) {
+        if (isCanceled()) {
+            return false;
+        }
+        mConnections.add(connection);
+        return true;
+    }
+
+    synchronized void unregister(HttpURLConnection connection) {
+        mConnections.remove(connection);
+    }
+}
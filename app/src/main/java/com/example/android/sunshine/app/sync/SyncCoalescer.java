@@ -0,0 +1,128 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.R;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps overlapping requests for the same set of locations down to one sync, and skips the
+ * ones made soon after that set was last synced.
+ */
+class SyncCoalescer {
+
+    private static SyncCoalescer sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final String mLocationsKey;
+    private final String mTimeKey;
+    private final SyncRetryPolicy.Clock mClock;
+
+    // Guarded by this.  The sync running for each set of locations
+    private final Map<String, FutureTask<Void>> mInFlight = new HashMap<String, FutureTask<Void>>();
+
+    /**
+     * @param locationsKey where in the preferences to keep the last synced set of locations
+     * @param timeKey      and when it was synced
+     */
+    SyncCoalescer(SharedPreferences prefs, String locationsKey, String timeKey,
+                  SyncRetryPolicy.Clock clock) {
+        mPrefs = prefs;
+        mLocationsKey = locationsKey;
+        mTimeKey = timeKey;
+        mClock = clock;
+    }
+
+    static synchronized SyncCoalescer getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncCoalescer(PreferenceManager.getDefaultSharedPreferences(context),
+                    context.getString(R.string.pref_last_sync_locations),
+                    context.getString(R.string.pref_last_sync_time),
+                    SyncRetryPolicy.SYSTEM_CLOCK);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return a key for the set of locations, whichever of them is preferred, so switching
+     * among locations that were just synced doesn't sync them again
+     */
+    static String getKey(List<String> locations) {
+        List<String> sorted = new ArrayList<String>(locations);
+        Collections.sort(sorted);
+        return TextUtils.join("\n", sorted);
+    }
+
+    /**
+     * @return whether the locations were all synced successfully within the last maxAgeMillis
+     */
+    boolean isFresh(String key, long maxAgeMillis) {
+        if (!key.equals(mPrefs.getString(mLocationsKey, null))) {
+            return false;
+        }
+        long age = mClock.currentTimeMillis() - mPrefs.getLong(mTimeKey, 0);
+        // A clock set backwards makes the last sync look like it's in the future
+        return age >= 0 && age < maxAgeMillis;
+    }
+
+    /**
+     * Records that the locations were all synced successfully just now.
+     */
+    void markFresh(String key) {
+        mPrefs.edit()
+                .putString(mLocationsKey, key)
+                .putLong(mTimeKey, mClock.currentTimeMillis())
+                .apply();
+    }
+
+    /**
+     * Runs the sync for a set of locations on this thread, unless one for the same locations
+     * is already running, in which case waits for that one to finish instead.
+     *
+     * @param timeoutMillis how long to wait for a sync that's already running
+     * @return true if this call ran the sync, false if it joined one already running
+     * @throws ExecutionException if the sync threw, whichever call ran it
+     * @throws TimeoutException   if the sync being waited for didn't finish in time; it keeps
+     *                            running
+     */
+    boolean run(String key, Callable<Void> sync, long timeoutMillis)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        FutureTask<Void> task;
+        boolean leader;
+        synchronized (this) {
+            task = mInFlight.get(key);
+            leader = task == null;
+            if (leader) {
+                task = new FutureTask<Void>(sync);
+                mInFlight.put(key, task);
+            }
+        }
+        if (!leader) {
+            task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return false;
+        }
+        try {
+            task.run();
+        } finally {
+            synchronized (this) {
+                mInFlight.remove(key);
+            }
+        }
+        // Done by now, so this only passes on what the sync threw
+        task.get();
+        return true;
+    }
+}
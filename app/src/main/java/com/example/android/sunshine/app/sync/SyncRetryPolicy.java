@@ -0,0 +1,133 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Reports a sync's failures through its SyncResult, and backs off with jitter after the ones
+ * worth retrying.
+ */
+class SyncRetryPolicy {
+    private static final String LOG_TAG = SyncRetryPolicy.class.getSimpleName();
+
+    // How a location's fetch failed
+    static final int FAILURE_NONE = 0;
+    // No usable response: the connection failed or timed out
+    static final int FAILURE_IO = 1;
+    // The server answered with an error
+    static final int FAILURE_SERVER = 2;
+    // The forecast couldn't be parsed
+    static final int FAILURE_INVALID_DATA = 3;
+    // The server doesn't know the location
+    static final int FAILURE_UNKNOWN_LOCATION = 4;
+
+    // The delay after the first failure in a row, and the most it grows to
+    static final long BASE_DELAY_MILLIS = 30 * 1000;
+    static final long MAX_DELAY_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * The time, for the delay the framework is told to wait until.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final SharedPreferences mPrefs;
+    private final String mFailuresKey;
+    private final Clock mClock;
+    private final Random mRandom;
+
+    /**
+     * @param failuresKey where in the preferences to keep the count of failed syncs in a row,
+     *                    so the delay keeps growing across restarts
+     */
+    SyncRetryPolicy(SharedPreferences prefs, String failuresKey, Clock clock, Random random) {
+        mPrefs = prefs;
+        mFailuresKey = failuresKey;
+        mClock = clock;
+        mRandom = random;
+    }
+
+    /**
+     * @return one of the FAILURE_ constants
+     */
+    static int classify(LocationForecast forecast) {
+        switch (forecast.mStatus) {
+            case SunshineSyncAdapter.LOCATION_STATUS_OK:
+                return FAILURE_NONE;
+            case SunshineSyncAdapter.LOCATION_STATUS_INVALID:
+                return FAILURE_UNKNOWN_LOCATION;
+            case SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID:
+                return FAILURE_INVALID_DATA;
+            case SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN:
+                return forecast.mResponseCode == 0 ? FAILURE_IO : FAILURE_SERVER;
+            default:
+                // Never got as far as a response
+                return FAILURE_IO;
+        }
+    }
+
+    /**
+     * Counts a location's outcome in the sync's result.
+     */
+    void record(int failure, SyncResult result) {
+        switch (failure) {
+            case FAILURE_IO:
+            case FAILURE_SERVER:
+                result.stats.numIoExceptions++;
+                break;
+            case FAILURE_INVALID_DATA:
+                result.stats.numParseExceptions++;
+                break;
+            case FAILURE_UNKNOWN_LOCATION:
+                // The user's setting, not the sync, is what's wrong
+                result.stats.numSkippedEntries++;
+                break;
+        }
+    }
+
+    /**
+     * Called once everything the sync did has been recorded.  If it hit a failure worth
+     * retrying, tells the framework not to try again before the backoff delay is up.
+     *
+     * @return the delay, or 0 if there's nothing to retry
+     */
+    long onSyncFinished(SyncResult result) {
+        int failures = mPrefs.getInt(mFailuresKey, 0);
+        if (result.stats.numIoExceptions == 0) {
+            if (failures != 0) {
+                mPrefs.edit().putInt(mFailuresKey, 0).apply();
+            }
+            return 0;
+        }
+        failures++;
+        mPrefs.edit().putInt(mFailuresKey, failures).apply();
+        long delay = getDelayMillis(failures);
+        // The framework takes the time in seconds
+        result.delayUntil = (mClock.currentTimeMillis() + delay) / 1000;
+        Log.d(LOG_TAG, "Sync failed " + failures + " times in a row, retrying in " + delay + "ms");
+        return delay;
+    }
+
+    /**
+     * @return a delay between half and all of the backoff for that many failures in a row
+     */
+    long getDelayMillis(int failures) {
+        long backoff = BASE_DELAY_MILLIS;
+        for (int i = 1; i < failures && backoff < MAX_DELAY_MILLIS; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, MAX_DELAY_MILLIS);
+        return backoff / 2 + (long) (mRandom.nextDouble() * (backoff / 2));
+    }
+}
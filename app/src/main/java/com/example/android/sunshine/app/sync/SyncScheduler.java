@@ -0,0 +1,161 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+
+/**
+ * Picks the periodic sync's period from how much recent syncs changed, whether the app was
+ * opened lately, and the state of the battery and network.
+ */
+class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    // The default period, and the shortest and longest it adapts to, in seconds
+    static final int DEFAULT_INTERVAL = SunshineSyncAdapter.SYNC_INTERVAL;
+    static final int MIN_INTERVAL = 60 * 60;
+    static final int MAX_INTERVAL = 12 * 60 * 60;
+    // The longest period for a while after the app was opened, and how long that lasts
+    static final int RECENTLY_OPENED_INTERVAL = 2 * 60 * 60;
+    static final long RECENTLY_OPENED_MILLIS = 12 * 60 * 60 * 1000;
+    // The shortest period on a low battery
+    static final int LOW_BATTERY_INTERVAL = 6 * 60 * 60;
+    // A sync that changes at least this share of the rows it downloaded finds the weather unsettled
+    static final float VOLATILE_FRACTION = 0.5f;
+
+    // What the device can afford right now
+    static final int CONSTRAINT_LOW_BATTERY = 1;
+    static final int CONSTRAINT_METERED = 2;
+
+    // Battery level, in percent, at or below which an unplugged device counts as low
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private static SyncScheduler sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final String mIntervalKey;
+    private final String mScheduledKey;
+    private final String mOpenedKey;
+    private final SyncRetryPolicy.Clock mClock;
+
+    /**
+     * @param intervalKey  where in the preferences to keep the period the syncs adapted to
+     * @param scheduledKey the period last handed to the framework
+     * @param openedKey    and when the app was last opened
+     */
+    SyncScheduler(SharedPreferences prefs, String intervalKey, String scheduledKey,
+                  String openedKey, SyncRetryPolicy.Clock clock) {
+        mPrefs = prefs;
+        mIntervalKey = intervalKey;
+        mScheduledKey = scheduledKey;
+        mOpenedKey = openedKey;
+        mClock = clock;
+    }
+
+    static synchronized SyncScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncScheduler(PreferenceManager.getDefaultSharedPreferences(context),
+                    context.getString(R.string.pref_sync_interval),
+                    context.getString(R.string.pref_sync_scheduled_interval),
+                    context.getString(R.string.pref_last_opened),
+                    SyncRetryPolicy.SYSTEM_CLOCK);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the CONSTRAINT_ flags that apply to the device right now
+     */
+    static int readConstraints(Context context) {
+        int constraints = 0;
+        // The battery broadcast is sticky, so this reads the last one without listening
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            boolean plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            if (!plugged && level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_PERCENT) {
+                constraints |= CONSTRAINT_LOW_BATTERY;
+            }
+        }
+        ConnectivityManager connectivity =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (ConnectivityManagerCompat.isActiveNetworkMetered(connectivity)) {
+            constraints |= CONSTRAINT_METERED;
+        }
+        return constraints;
+    }
+
+    /**
+     * Adapts the period to what a sync that ran to the end changed.  Failed syncs are left to
+     * the retry policy, and don't say anything about the weather.
+     */
+    void onSyncFinished(SyncResult result) {
+        if (result.hasError()) {
+            return;
+        }
+        int interval = mPrefs.getInt(mIntervalKey, DEFAULT_INTERVAL);
+        long changed = result.stats.numUpdates;
+        // Locations the server said weren't modified download no rows at all
+        long downloaded = result.stats.numEntries;
+        int adapted;
+        if (changed == 0) {
+            adapted = (int) Math.min((long) interval * 3 / 2, MAX_INTERVAL);
+        } else if (changed >= downloaded * VOLATILE_FRACTION) {
+            adapted = MIN_INTERVAL;
+        } else {
+            adapted = interval;
+        }
+        if (adapted != interval) {
+            Log.d(LOG_TAG, changed + " of " + downloaded + " rows changed, period "
+                    + interval + "s to " + adapted + "s");
+            mPrefs.edit().putInt(mIntervalKey, adapted).apply();
+        }
+    }
+
+    void onAppOpened() {
+        mPrefs.edit().putLong(mOpenedKey, mClock.currentTimeMillis()).apply();
+    }
+
+    /**
+     * @param constraints the CONSTRAINT_ flags that apply
+     * @return the period the sync should run at now, in seconds
+     */
+    int getIntervalSeconds(int constraints) {
+        int interval = mPrefs.getInt(mIntervalKey, DEFAULT_INTERVAL);
+        long sinceOpened = mClock.currentTimeMillis() - mPrefs.getLong(mOpenedKey, 0);
+        if (sinceOpened >= 0 && sinceOpened < RECENTLY_OPENED_MILLIS) {
+            interval = Math.min(interval, RECENTLY_OPENED_INTERVAL);
+        }
+        if ((constraints & CONSTRAINT_METERED) != 0) {
+            interval = Math.max(interval, DEFAULT_INTERVAL);
+        }
+        if ((constraints & CONSTRAINT_LOW_BATTERY) != 0) {
+            interval = Math.max(interval, LOW_BATTERY_INTERVAL);
+        }
+        return interval;
+    }
+
+    /**
+     * Records the period handed to the framework.
+     *
+     * @return false if it was already scheduled at that period, so needn't be again
+     */
+    boolean setScheduled(int interval) {
+        if (mPrefs.getInt(mScheduledKey, 0) == interval) {
+            return false;
+        }
+        mPrefs.edit().putInt(mScheduledKey, interval).apply();
+        return true;
+    }
+}
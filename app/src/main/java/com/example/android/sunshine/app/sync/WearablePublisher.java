@@ -0,0 +1,198 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends data items to the wearable from one worker thread, connecting only when there's
+ * something to send and skipping items identical to the last one sent on their path.
+ */
+public class WearablePublisher {
+    private static final String LOG_TAG = WearablePublisher.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final long PUT_TIMEOUT_MILLIS = 10 * 1000;
+    // The worker is let go when there's nothing to send, since syncs are hours apart
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Where the data items go; the wearable Data API, or a stand-in for testing.  Only ever
+     * called from the publisher's worker.
+     */
+    interface DataSink {
+        int CONNECTED = 0;
+        // Worth trying again with the next item
+        int NOT_CONNECTED = 1;
+        // Never going to work in this process, as there's no wearable API on the device
+        int UNAVAILABLE = 2;
+
+        int connect(long timeoutMillis);
+
+        /**
+         * @return true if the item was stored, to be delivered to the wearable
+         */
+        boolean putDataItem(String path, DataMap dataMap, long timeoutMillis);
+
+        void disconnect();
+    }
+
+    private static WearablePublisher sInstance;
+
+    private final DataSink mSink;
+    private final ThreadPoolExecutor mWorker;
+
+    // Guarded by this.  The latest item for each path not yet taken by the worker
+    private final Map<String, DataMap> mPending = new LinkedHashMap<String, DataMap>();
+    private boolean mDraining;
+
+    // Only touched by the worker
+    private final Map<String, byte[]> mLastSent = new HashMap<String, byte[]>();
+    private boolean mUnavailable;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    WearablePublisher(DataSink sink) {
+        mSink = sink;
+        mWorker = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mWorker.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized WearablePublisher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearablePublisher(new GoogleApiDataSink(context));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues the item to be sent, replacing any not yet sent for the same path.  Never waits.
+     */
+    public void publish(String path, DataMap dataMap) {
+        synchronized (this) {
+            mPending.put(path, dataMap);
+            if (mDraining) {
+                return;
+            }
+            mDraining = true;
+        }
+        mWorker.execute(mDrain);
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Map<String, DataMap> batch;
+                synchronized (this) {
+                    if (mPending.isEmpty()) {
+                        mDraining = false;
+                        return;
+                    }
+                    batch = new LinkedHashMap<String, DataMap>(mPending);
+                    mPending.clear();
+                }
+                for (Map.Entry<String, DataMap> item : batch.entrySet()) {
+                    send(item.getKey(), item.getValue());
+                }
+            }
+        } finally {
+            mSink.disconnect();
+        }
+    }
+
+    private void send(String path, DataMap dataMap) {
+        if (mUnavailable) {
+            return;
+        }
+        byte[] bytes = dataMap.toByteArray();
+        if (Arrays.equals(bytes, mLastSent.get(path))) {
+            Log.d(LOG_TAG, "Skipping " + path + ", unchanged since it was last sent");
+            return;
+        }
+        int status = mSink.connect(CONNECT_TIMEOUT_MILLIS);
+        if (status == DataSink.UNAVAILABLE) {
+            Log.d(LOG_TAG, "No wearable API on this device, not sending to the wearable");
+            mUnavailable = true;
+            return;
+        } else if (status != DataSink.CONNECTED) {
+            Log.w(LOG_TAG, "Couldn't connect to send " + path);
+            return;
+        }
+        if (mSink.putDataItem(path, dataMap, PUT_TIMEOUT_MILLIS)) {
+            mLastSent.put(path, bytes);
+        } else {
+            Log.e(LOG_TAG, "Failed to send " + path);
+        }
+    }
+
+    /**
+     * The wearable Data API, through a client that's connected only while there's something
+     * to send.
+     */
+    private static class GoogleApiDataSink implements DataSink {
+        private final Context mContext;
+        private GoogleApiClient mClient;
+
+        GoogleApiDataSink(Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        @Override
+        public int connect(long timeoutMillis) {
+            if (mClient == null) {
+                mClient = new GoogleApiClient.Builder(mContext)
+                        .addApi(Wearable.API)
+                        .build();
+            }
+            if (mClient.isConnected()) {
+                return CONNECTED;
+            }
+            ConnectionResult result =
+                    mClient.blockingConnect(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (result.isSuccess()) {
+                return CONNECTED;
+            }
+            return result.getErrorCode() == ConnectionResult.API_UNAVAILABLE
+                    ? UNAVAILABLE : NOT_CONNECTED;
+        }
+
+        @Override
+        public boolean putDataItem(String path, DataMap dataMap, long timeoutMillis) {
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(path);
+            putDataMapRequest.getDataMap().putAll(dataMap);
+            PutDataRequest request = putDataMapRequest.asPutDataRequest();
+            request.setUrgent();
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mClient, request)
+                    .await(timeoutMillis, TimeUnit.MILLISECONDS);
+            return result.getStatus().isSuccess();
+        }
+
+        @Override
+        public void disconnect() {
+            if (mClient != null && mClient.isConnected()) {
+                mClient.disconnect();
+            }
+        }
+    }
+}
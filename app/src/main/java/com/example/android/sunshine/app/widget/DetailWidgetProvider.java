@@ -7,7 +7,9 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.TaskStackBuilder;
 import android.widget.RemoteViews;
@@ -34,9 +36,9 @@ public class DetailWidgetProvider extends AppWidgetProvider {
 
             // Set up the collection
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-                setRemoteAdapter(context, views);
+                setRemoteAdapter(context, views, appWidgetId);
             } else {
-                setRemoteAdapterV11(context, views);
+                setRemoteAdapterV11(context, views, appWidgetId);
             }
             boolean useDetailActivity = context.getResources()
                     .getBoolean(R.bool.use_detail_activity);
@@ -54,6 +56,13 @@ public class DetailWidgetProvider extends AppWidgetProvider {
         }
     }
 
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
+                                          int appWidgetId, Bundle newOptions) {
+        // The art is decoded for the widget's size, so a resized widget needs it again
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetId, R.id.widget_list);
+    }
+
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
@@ -69,21 +78,35 @@ public class DetailWidgetProvider extends AppWidgetProvider {
      * Sets the remote adapter used to fill in the list items
      *
      * @param views RemoteViews to set the RemoteAdapter
+     * @param appWidgetId the widget the adapter fills in
      */
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
-    private void setRemoteAdapter(Context context, @NonNull final RemoteViews views) {
-        views.setRemoteAdapter(R.id.widget_list,
-                new Intent(context, DetailWidgetRemoteViewsService.class));
+    private void setRemoteAdapter(Context context, @NonNull final RemoteViews views,
+                                  int appWidgetId) {
+        views.setRemoteAdapter(R.id.widget_list, getRemoteAdapterIntent(context, appWidgetId));
     }
 
     /**
      * Sets the remote adapter used to fill in the list items
      *
      * @param views RemoteViews to set the RemoteAdapter
+     * @param appWidgetId the widget the adapter fills in
      */
     @SuppressWarnings("deprecation")
-    private void setRemoteAdapterV11(Context context, @NonNull final RemoteViews views) {
+    private void setRemoteAdapterV11(Context context, @NonNull final RemoteViews views,
+                                     int appWidgetId) {
         views.setRemoteAdapter(0, R.id.widget_list,
-                new Intent(context, DetailWidgetRemoteViewsService.class));
+                getRemoteAdapterIntent(context, appWidgetId));
+    }
+
+    /**
+     * Each widget gets its own factory, since the art is decoded for the widget's size.  The
+     * id is written into the data as well, as intents differing only in extras are the same.
+     */
+    private static Intent getRemoteAdapterIntent(Context context, int appWidgetId) {
+        Intent intent = new Intent(context, DetailWidgetRemoteViewsService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        intent.setData(Uri.parse(intent.toUri(Intent.URI_INTENT_SCHEME)));
+        return intent;
     }
 }
@@ -1,24 +1,29 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
+import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.ArtCache;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.WeatherConditions;
 
-import java.util.concurrent.ExecutionException;
+import java.util.Arrays;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -42,10 +47,18 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // A row's RemoteViews, art included, is copied to the host in one binder transaction, and
+    // the host's budget for those is shared by every row it has asked for
+    static final int ROW_PARCEL_BUDGET_BYTES = 128 * 1024;
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
+        final int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                AppWidgetManager.INVALID_APPWIDGET_ID);
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            // The art for each condition the forecast has, shared by all the rows showing it
+            private final Bitmap[] art = new Bitmap[WeatherConditions.CONDITION_COUNT];
 
             @Override
             public void onCreate() {
@@ -65,12 +78,32 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
+                data = ForecastSnapshotCache.query(DetailWidgetRemoteViewsService.this,
+                        weatherForLocationUri,
                         FORECAST_COLUMNS,
-                        null,
-                        null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                loadArt();
+            }
+
+            // Decodes each condition's art once, at the size the widget shows it, so the rows
+            // only look it up.  Null with the app's own graphics, or if it couldn't be loaded.
+            private void loadArt() {
+                Arrays.fill(art, null);
+                if (data == null) {
+                    return;
+                }
+                int iconSize = getIconSize(DetailWidgetRemoteViewsService.this, appWidgetId);
+                ArtCache artCache = ArtCache.getInstance(DetailWidgetRemoteViewsService.this);
+                boolean[] loaded = new boolean[WeatherConditions.CONDITION_COUNT];
+                for (int i = 0; data.moveToPosition(i); i++) {
+                    int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                    int condition = WeatherConditions.getCondition(weatherId);
+                    if (!loaded[condition]) {
+                        loaded[condition] = true;
+                        art[condition] = artCache.get(weatherId, iconSize, iconSize);
+                    }
+                }
             }
 
             @Override
@@ -79,6 +112,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                     data.close();
                     data = null;
                 }
+                Arrays.fill(art, null);
             }
 
             @Override
@@ -92,61 +126,18 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         data == null || !data.moveToPosition(position)) {
                     return null;
                 }
-                RemoteViews views = new RemoteViews(getPackageName(),
-                        R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
-                } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-                }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
-                }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-                final Intent fillInIntent = new Intent();
                 String locationSetting =
                         Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
                         locationSetting,
                         dateInMillis);
-                fillInIntent.setData(weatherUri);
-                views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
-                return views;
-            }
-
-            @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
-            private void setRemoteContentDescription(RemoteViews views, String description) {
-                views.setContentDescription(R.id.widget_icon, description);
+                return buildRow(DetailWidgetRemoteViewsService.this, weatherId,
+                        art[WeatherConditions.getCondition(weatherId)],
+                        data.getString(INDEX_WEATHER_DESC), dateInMillis,
+                        data.getDouble(INDEX_WEATHER_MAX_TEMP),
+                        data.getDouble(INDEX_WEATHER_MIN_TEMP), weatherUri);
             }
 
             @Override
@@ -172,4 +163,70 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
             }
         };
     }
+
+    /**
+     * Builds one row of the widget's list.
+     *
+     * @param weatherArtImage the art pack's art, or null to use the app's icon
+     */
+    static RemoteViews buildRow(Context context, int weatherId, Bitmap weatherArtImage,
+                                String description, long dateInMillis, double maxTemp,
+                                double minTemp, Uri weatherUri) {
+        RemoteViews views = new RemoteViews(context.getPackageName(),
+                R.layout.widget_detail_list_item);
+        if (weatherArtImage != null) {
+            views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+        } else {
+            views.setImageViewResource(R.id.widget_icon,
+                    Utility.getIconResourceForWeatherCondition(weatherId));
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_date,
+                Utility.getFriendlyDayString(context, dateInMillis, false));
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature,
+                Utility.formatTemperature(context, maxTemp));
+        views.setTextViewText(R.id.widget_low_temperature,
+                Utility.formatTemperature(context, minTemp));
+
+        final Intent fillInIntent = new Intent();
+        fillInIntent.setData(weatherUri);
+        views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+        return views;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private static void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+
+    /**
+     * The edge, in pixels, of the box a row's art is decoded to fit.  The row layout shows the
+     * icon at list_icon, so nothing larger is ever drawn; a host that lays the widget out in
+     * cells smaller than that gets it smaller still.
+     */
+    static int getIconSize(Context context, int appWidgetId) {
+        int iconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                || appWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+            return iconSize;
+        }
+        return Math.min(iconSize, getSmallestCellSize(context, appWidgetId));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static int getSmallestCellSize(Context context, int appWidgetId) {
+        Bundle options = AppWidgetManager.getInstance(context).getAppWidgetOptions(appWidgetId);
+        // The minimums are the portrait width and the landscape height
+        int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+        int minHeightDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT);
+        if (minWidthDp <= 0 || minHeightDp <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                Math.min(minWidthDp, minHeightDp), displayMetrics);
+    }
 }
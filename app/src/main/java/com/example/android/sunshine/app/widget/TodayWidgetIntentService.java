@@ -32,6 +32,7 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
@@ -61,12 +62,12 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
+        // Get today's data from the snapshot the last sync left, or the ContentProvider
         String location = Utility.getPreferredLocation(this);
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor data = ForecastSnapshotCache.query(this, weatherForLocationUri, FORECAST_COLUMNS,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
         if (data == null) {
             return;
         }
@@ -0,0 +1,158 @@
+package com.example.android.sunshine.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The forecast the phone sends the wearable, from today on, as a versioned payload of about
+ * ten bytes a day.  Fields added later go after the days, where older decoders stop reading.
+ */
+public final class WearForecast {
+
+    public static final int VERSION = 1;
+
+    private static final int FLAG_METRIC = 1;
+    // The version, flags and day count
+    private static final int HEADER_BYTES = 4;
+    // Julian day, weather id, and the high and low in tenths of a degree
+    private static final int DAY_BYTES = 10;
+
+    private final boolean mMetric;
+    private final int[] mJulianDays;
+    private final short[] mWeatherIds;
+    private final short[] mMaxTemps;
+    private final short[] mMinTemps;
+
+    private WearForecast(boolean metric, int days) {
+        mMetric = metric;
+        mJulianDays = new int[days];
+        mWeatherIds = new short[days];
+        mMaxTemps = new short[days];
+        mMinTemps = new short[days];
+    }
+
+    /**
+     * @param julianDays  the days of the forecast, in increasing order
+     * @param weatherIds  OpenWeatherMap condition ids, by day
+     * @param maxTemps    highs in Celsius, by day
+     * @param minTemps    lows in Celsius, by day
+     */
+    public WearForecast(boolean metric, int[] julianDays, int[] weatherIds, double[] maxTemps,
+                        double[] minTemps) {
+        this(metric, julianDays.length);
+        if (weatherIds.length != julianDays.length || maxTemps.length != julianDays.length
+                || minTemps.length != julianDays.length) {
+            throw new IllegalArgumentException("Every day needs a weather id and temperatures");
+        }
+        for (int i = 0; i < julianDays.length; i++) {
+            if (i > 0 && julianDays[i] <= julianDays[i - 1]) {
+                throw new IllegalArgumentException("Forecast days out of order");
+            }
+            mJulianDays[i] = julianDays[i];
+            mWeatherIds[i] = (short) Math.max(0, Math.min(Short.MAX_VALUE, weatherIds[i]));
+            mMaxTemps[i] = toTenths(maxTemps[i]);
+            mMinTemps[i] = toTenths(minTemps[i]);
+        }
+    }
+
+    private static short toTenths(double temperature) {
+        long tenths = Math.round(temperature * 10);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tenths));
+    }
+
+    /**
+     * @return the payload, starting with {@link #VERSION}
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(HEADER_BYTES + DAY_BYTES * mJulianDays.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeByte(mMetric ? FLAG_METRIC : 0);
+            out.writeShort(mJulianDays.length);
+            for (int i = 0; i < mJulianDays.length; i++) {
+                out.writeInt(mJulianDays[i]);
+                out.writeShort(mWeatherIds[i]);
+                out.writeShort(mMaxTemps[i]);
+                out.writeShort(mMinTemps[i]);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Only the underlying stream could throw, and a byte array never does
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a payload made by {@link #encode()}.
+     *
+     * @throws IOException if the payload is cut short, out of order, or from a version this
+     *                     can't read
+     */
+    public static WearForecast decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported forecast payload version " + version);
+        }
+        int flags = in.readUnsignedByte();
+        int days = in.readUnsignedShort();
+        if (payload.length < HEADER_BYTES + DAY_BYTES * days) {
+            throw new IOException("Forecast payload too short for " + days + " days");
+        }
+        WearForecast forecast = new WearForecast((flags & FLAG_METRIC) != 0, days);
+        for (int i = 0; i < days; i++) {
+            forecast.mJulianDays[i] = in.readInt();
+            if (i > 0 && forecast.mJulianDays[i] <= forecast.mJulianDays[i - 1]) {
+                throw new IOException("Forecast payload days out of order");
+            }
+            forecast.mWeatherIds[i] = in.readShort();
+            forecast.mMaxTemps[i] = in.readShort();
+            forecast.mMinTemps[i] = in.readShort();
+        }
+        return forecast;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    public int getDayCount() {
+        return mJulianDays.length;
+    }
+
+    /**
+     * @return the index of the Julian day, or a negative number if the forecast doesn't have it
+     */
+    public int indexOf(int julianDay) {
+        return Math.max(-1, Arrays.binarySearch(mJulianDays, julianDay));
+    }
+
+    public int getJulianDay(int index) {
+        return mJulianDays[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    /**
+     * @return the high in Celsius, to a tenth of a degree
+     */
+    public double getMaxTemp(int index) {
+        return mMaxTemps[index] / 10.0;
+    }
+
+    /**
+     * @return the low in Celsius, to a tenth of a degree
+     */
+    public double getMinTemp(int index) {
+        return mMinTemps[index] / 10.0;
+    }
+}
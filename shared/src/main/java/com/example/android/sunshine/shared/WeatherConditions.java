@@ -0,0 +1,85 @@
+package com.example.android.sunshine.shared;
+
+/**
+ * Groups OpenWeatherMap condition ids into the handful of conditions Sunshine has artwork for.
+ * <p/>
+ * The grouping is worked out once into a table indexed by the id itself, so a lookup is a
+ * bounds check and an array read rather than a walk down a chain of range comparisons.  Each
+ * module maps the condition to its own resources with a table of the same shape.
+ */
+public final class WeatherConditions {
+
+    // Conditions, in the order modules lay out their per-condition tables
+    public static final int CONDITION_NONE = 0;
+    public static final int CONDITION_STORM = 1;
+    public static final int CONDITION_LIGHT_RAIN = 2;
+    public static final int CONDITION_RAIN = 3;
+    public static final int CONDITION_SNOW = 4;
+    public static final int CONDITION_FOG = 5;
+    public static final int CONDITION_CLEAR = 6;
+    public static final int CONDITION_LIGHT_CLOUDS = 7;
+    public static final int CONDITION_CLOUDS = 8;
+    public static final int CONDITION_COUNT = 9;
+
+    // OpenWeatherMap ids are three digits; anything larger has no condition
+    public static final int MAX_WEATHER_ID = 999;
+
+    // Names used by the art packs, indexed by condition
+    private static final String[] ART_NAMES = {
+            null,
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    private static final byte[] CONDITIONS = new byte[MAX_WEATHER_ID + 1];
+
+    static {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        fill(200, 232, CONDITION_STORM);
+        fill(300, 321, CONDITION_LIGHT_RAIN);
+        fill(500, 504, CONDITION_RAIN);
+        fill(511, 511, CONDITION_SNOW);
+        fill(520, 531, CONDITION_RAIN);
+        fill(600, 622, CONDITION_SNOW);
+        // 761 (dust) has always come out as fog, so it stays that way
+        fill(701, 761, CONDITION_FOG);
+        fill(781, 781, CONDITION_STORM);
+        fill(800, 800, CONDITION_CLEAR);
+        fill(801, 801, CONDITION_LIGHT_CLOUDS);
+        fill(802, 804, CONDITION_CLOUDS);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void fill(int fromId, int toId, int condition) {
+        for (int id = fromId; id <= toId; id++) {
+            CONDITIONS[id] = (byte) condition;
+        }
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return one of the CONDITION_ constants; CONDITION_NONE if the id has no artwork.
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return CONDITION_NONE;
+        }
+        return CONDITIONS[weatherId];
+    }
+
+    /**
+     * @return the art pack name of the condition, or null for CONDITION_NONE.
+     */
+    public static String getArtName(int condition) {
+        return ART_NAMES[condition];
+    }
+}
@@ -44,6 +44,7 @@ import android.view.Gravity;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.shared.WearForecast;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 
@@ -119,6 +120,8 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
          */
         static final int AMBIENT_ALPHA = 0;
         static final int NORMAL_ALPHA = 255;
+        // No Julian day is shown yet
+        static final int NO_DAY = Integer.MIN_VALUE;
 
         boolean mAmbient;
         Time mTime;
@@ -141,16 +144,15 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
         boolean mLowBitAmbient;
 
         /**
-         * Keys for retrieving info from DataMap received from mobile app (via SyncAdapter)
+         * The forecast from the phone, and the Julian day whose weather is being shown from it.
+         * The day is worked out again when the phone sends a new forecast, and at midnight.
          */
-        private static final String WEAR_DATE_STRING_KEY = "date";
-        private static final String WEAR_HIGH_TEMP_KEY = "high";
-        private static final String WEAR_LOW_TEMP_KEY = "low";
-        private static final String WEAR_WEATHER_IMAGE_KEY = "weather_image";
+        WearForecast mForecast;
+        int mShownJulianDay;
 
         /**
-         * Fields for updating UI Elements via updateUIElements.
-         * Called when DataApi.DataListener's onDataChange method is called
+         * Fields for updating UI Elements via updateUIElements; null when the forecast doesn't
+         * cover today.
          */
         String mDateString;
         String mHighTemp;
@@ -197,6 +199,8 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
 //            mIconHider.setAlpha(50);
 
             mTime = new Time();
+            mForecast = ForecastCache.get(DigitalWatchFace.this);
+            mShownJulianDay = NO_DAY;
         }
 
         @Override
@@ -349,6 +353,7 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
 
             // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
             mTime.setToNow();
+            updateUIElements();
             String text = mAmbient
                     ? String.format("%d:%02d", mTime.hour, mTime.minute)
                     : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
@@ -466,11 +471,27 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             }
         }
 
-        private void updateUIElements(String dateString, String highTemp, String lowTemp, int weatherId) {
-            mDateString = dateString;
-            mHighTemp = highTemp;
-            mLowTemp = lowTemp;
-            mWeatherId = weatherId;
+        /**
+         * Formats today's weather from the forecast, once a day rather than on every frame.
+         */
+        private void updateUIElements() {
+            long now = mTime.toMillis(false);
+            int julianDay = Time.getJulianDay(now, mTime.gmtoff);
+            if (julianDay == mShownJulianDay) {
+                return;
+            }
+            mShownJulianDay = julianDay;
+            int day = mForecast == null ? -1 : mForecast.indexOf(julianDay);
+            if (day < 0) {
+                mDateString = null;
+                return;
+            }
+            Context context = DigitalWatchFace.this;
+            boolean isMetric = mForecast.isMetric();
+            mDateString = WearUtility.prettifyDate(now);
+            mHighTemp = WearUtility.formatTemperature(context, mForecast.getMaxTemp(day), isMetric);
+            mLowTemp = WearUtility.formatTemperature(context, mForecast.getMinTemp(day), isMetric);
+            mWeatherId = mForecast.getWeatherId(day);
         }
 
         @Override
@@ -493,12 +514,9 @@ public class DigitalWatchFace extends CanvasWatchFaceService {
             @Override
             public void onReceive(Context context, Intent intent) {
                 Log.d(LOG_TAG, "RECEIVED!!)");
-                Bundle bundle = intent.getExtras();
-                String dateString = bundle.getString(WEAR_DATE_STRING_KEY);
-                String highTemp = bundle.getString(WEAR_HIGH_TEMP_KEY);
-                String lowTemp = bundle.getString(WEAR_LOW_TEMP_KEY);
-                int weatherId = bundle.getInt(WEAR_WEATHER_IMAGE_KEY);
-                updateUIElements(dateString, highTemp, lowTemp, weatherId);
+                mForecast = ForecastCache.get(context);
+                mShownJulianDay = NO_DAY;
+                invalidate();
             }
         }
     }
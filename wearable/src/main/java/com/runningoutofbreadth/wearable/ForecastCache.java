@@ -0,0 +1,66 @@
+package com.runningoutofbreadth.wearable;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.WearForecast;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The last forecast the phone sent, kept in a file so the watch faces have it after a restart
+ * and can go on to the next day without the phone.
+ */
+public class ForecastCache {
+    private static final String LOG_TAG = ForecastCache.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast";
+
+    private static WearForecast sForecast;
+    private static boolean sLoaded;
+
+    private ForecastCache() {
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(context.getFileStreamPath(FILE_NAME));
+    }
+
+    /**
+     * @return the last forecast the phone sent, or null if there isn't one
+     */
+    public static synchronized WearForecast get(Context context) {
+        if (!sLoaded) {
+            sLoaded = true;
+            try {
+                sForecast = WearForecast.decode(getFile(context).readFully());
+            } catch (FileNotFoundException e) {
+                // Nothing's been sent yet
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error reading the stored forecast", e);
+            }
+        }
+        return sForecast;
+    }
+
+    /**
+     * Stores a forecast payload from the phone, once it's been checked to be one this can read.
+     */
+    public static synchronized void put(Context context, byte[] payload) throws IOException {
+        WearForecast forecast = WearForecast.decode(payload);
+        AtomicFile file = getFile(context);
+        FileOutputStream out = file.startWrite();
+        try {
+            out.write(payload);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            file.failWrite(out);
+            throw e;
+        }
+        sForecast = forecast;
+        sLoaded = true;
+    }
+}
@@ -11,10 +11,12 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.wearable.view.WatchViewStub;
+import android.text.format.Time;
 import android.util.Log;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.shared.WearForecast;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Wearable;
@@ -30,10 +32,6 @@ public class MainActivity extends Activity implements
     private TextView mLowTextView;
     private GoogleApiClient mGoogleApiClient;
 
-    private static final String WEAR_DATE_STRING_KEY = "date";
-    private static final String WEAR_HIGH_TEMP_KEY = "high";
-    private static final String WEAR_LOW_TEMP_KEY = "low";
-    private static final String WEAR_WEATHER_IMAGE_KEY = "weather_image";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,6 +46,7 @@ public class MainActivity extends Activity implements
                 mWeatherImageView = (ImageView) findViewById(R.id.weather_image_view);
                 mHighTextView = (TextView) findViewById(R.id.high_text_view);
                 mLowTextView = (TextView) findViewById(R.id.low_text_view);
+                showToday();
             }
         });
 
@@ -91,25 +90,42 @@ public class MainActivity extends Activity implements
 
     }
 
+    /**
+     * Shows today's weather from the forecast the phone last sent, if it covers today.
+     */
+    private void showToday() {
+        WearForecast forecast = ForecastCache.get(this);
+        if (mDateTextView == null || forecast == null) {
+            return;
+        }
+        Time time = new Time();
+        time.setToNow();
+        long now = time.toMillis(false);
+        int day = forecast.indexOf(Time.getJulianDay(now, time.gmtoff));
+        if (day < 0) {
+            return;
+        }
+        int weatherResourceId =
+                WearUtility.getIconResourceForWeatherCondition(forecast.getWeatherId(day));
+        Resources resources = getResources();
+
+        String date = WearUtility.prettifyDate(now);
+        Log.d(LOG_TAG, "dateString is: " + date);
+        mDateTextView.setText(date);
+        //TODO fix this once we load in the images
+        if (weatherResourceId != -1) {
+            mWeatherImageView.setImageDrawable(resources.getDrawable(weatherResourceId));
+        }
+        mHighTextView.setText(WearUtility.formatTemperature(
+                this, forecast.getMaxTemp(day), forecast.isMetric()));
+        mLowTextView.setText(WearUtility.formatTemperature(
+                this, forecast.getMinTemp(day), forecast.isMetric()));
+    }
+
     public class DataItemBroadcastReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
-            Bundle bundle = intent.getExtras();
-            String high = bundle.getString(WEAR_HIGH_TEMP_KEY);
-            String low = bundle.getString(WEAR_LOW_TEMP_KEY);
-            int weatherId = bundle.getInt(WEAR_WEATHER_IMAGE_KEY);
-            int weatherResourceId = WearUtility.getIconResourceForWeatherCondition(weatherId);
-            Resources resources = getResources();
-
-            String mDate = bundle.getString(WEAR_DATE_STRING_KEY);
-
-            Log.d(LOG_TAG, "mDate (long) is: " + String.valueOf(mDate)
-                    + " and dateString is: " + mDate);
-            mDateTextView.setText(mDate);
-            //TODO fix this once we load in the images
-            mWeatherImageView.setImageDrawable(resources.getDrawable(weatherResourceId));
-            mHighTextView.setText(String.valueOf(high));
-            mLowTextView.setText(String.valueOf(low));
+            showToday();
         }
     }
 
@@ -1,21 +1,49 @@
 package com.runningoutofbreadth.wearable;
 
-//import java.text.SimpleDateFormat;
-//import java.util.Locale;
+import android.content.Context;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
 
 /**
  * Created by SandD on 5/21/2016.
  */
 public class WearUtility {
 
-//    /**
-//     * Helper method for formatting milliseconds returned by the DataListener to match format:
-//     * EEE, MMM dd yyyy ==> 1463951241285 becomes "Sun, May 22 2016"
-//     * */
-//    public static String prettifyDate(long millis){
-//        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
-//        return simpleDateFormat.format(millis);
-//    }
+    // Icons for each of the WeatherConditions, indexed by condition
+    private static final int[] ICON_RESOURCES = {
+            -1,
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+
+    /**
+     * Helper method for formatting milliseconds to match the format the phone used to send:
+     * EEE, MMM dd yyyy ==> 1463951241285 becomes "Sun, May 22 2016"
+     * */
+    public static String prettifyDate(long millis){
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
+        return simpleDateFormat.format(millis);
+    }
+
+    /**
+     * Formats a temperature from the phone's forecast, which is always in Celsius, in the
+     * units the user chose on the phone.
+     */
+    public static String formatTemperature(Context context, double temperature, boolean isMetric) {
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return context.getString(R.string.format_temperature, temperature);
+    }
 
     /**
      * Helper method to provide the icon resource id according to the weather condition id returned
@@ -24,32 +52,7 @@ public class WearUtility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }
-        return -1;
+        return ICON_RESOURCES[WeatherConditions.getCondition(weatherId)];
     }
 
 }
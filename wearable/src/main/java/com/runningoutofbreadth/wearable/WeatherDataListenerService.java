@@ -2,6 +2,7 @@ package com.runningoutofbreadth.wearable;
 
 import android.content.Intent;
 import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
 
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
@@ -9,9 +10,14 @@ import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.WearableListenerService;
 
+import java.io.IOException;
+
 public class WeatherDataListenerService extends WearableListenerService{
 
-//    private final static String LOG_TAG = "WEARABLE SERVICE";
+    private final static String LOG_TAG = WeatherDataListenerService.class.getSimpleName();
+
+    // The data item holds the forecast as a WearForecast payload
+    private static final String WEAR_FORECAST_KEY = "forecast";
 
     @Override
     public void onDataChanged(DataEventBuffer dataEvents) {
@@ -22,10 +28,19 @@ public class WeatherDataListenerService extends WearableListenerService{
                         dataEvent.getDataItem()).getDataMap();
                 String path = dataEvent.getDataItem().getUri().getPath();
                 if (path.equals(getString(R.string.weather_data_path))) {
-                    //Broadcast data to receivers
+                    byte[] payload = dataMap.getByteArray(WEAR_FORECAST_KEY);
+                    if (payload == null) {
+                        continue;
+                    }
+                    try {
+                        ForecastCache.put(this, payload);
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Error storing the forecast from the phone", e);
+                        continue;
+                    }
+                    //Tell receivers the stored forecast has changed
                     Intent dataItemIntent = new Intent();
                     dataItemIntent.setAction(Intent.ACTION_SEND);
-                    dataItemIntent.putExtras(dataMap.toBundle());
                     LocalBroadcastManager.getInstance(this).sendBroadcast(dataItemIntent);
                 }
             }